@@ -0,0 +1,51 @@
+package de.thm.mni.compilerbau.benchmark;
+
+import de.thm.mni.compilerbau.generator.ProgramGenerator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Provides the SPL sources the benchmarks are run on.
+ * <p>
+ * An input is either the name of a program in the 'spltest' directory (e.g. "gol") or "synthetic:n", which denotes a
+ * program with n procedures created by the {@link ProgramGenerator}.
+ * The directory containing the test programs can be changed with the system property 'spl.testdir'.
+ */
+final class BenchmarkInputs {
+    private static final String SYNTHETIC_PREFIX = "synthetic:";
+
+    private BenchmarkInputs() {
+    }
+
+    static String load(String input) {
+        if (input.startsWith(SYNTHETIC_PREFIX)) {
+            return synthetic(Integer.parseInt(input.substring(SYNTHETIC_PREFIX.length())));
+        }
+
+        Path file = Path.of(System.getProperty("spl.testdir", "spltest"), input + ".spl");
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generates a program with the given amount of procedures using the {@link ProgramGenerator} defaults otherwise.
+     */
+    private static String synthetic(int procedures) {
+        ProgramGenerator.Settings settings = new ProgramGenerator.Settings();
+        settings.procedures = procedures;
+
+        StringWriter source = new StringWriter();
+        try (PrintWriter output = new PrintWriter(source)) {
+            new ProgramGenerator(settings).generate(output);
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package de.thm.mni.compilerbau.benchmark;
+
+import de.thm.mni.compilerbau.Pipeline;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._01_scanner.SourceFile;
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_optimize.ConstantFolder;
+import de.thm.mni.compilerbau.phases._04c_optimize.Inliner;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.Symbol;
+import java_cup.runtime.SymbolFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every compiler phase in isolation and the pipeline as a whole.
+ * <p>
+ * The phases after parsing only read the syntax tree and rebuild the information they attach to it, so they are
+ * measured repeatedly on a tree prepared once per trial. Variable allocation and code generation run on the optimized
+ * tree, like in the compiler. The generated code is discarded.
+ * <p>
+ * The pipeline is measured through {@link Pipeline#compile}, so it runs the same sequence of phases as the compiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+    @SuppressWarnings("deprecation")
+    private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
+
+    @Param({"fak", "gcd", "queens", "bigtest", "gol", "threedim", "synthetic:100", "synthetic:1000"})
+    public String input;
+
+    private String source;
+    private Path sourceFile;
+    private Program program;
+    private Program optimized;
+    private SymbolTable table;
+
+    @Setup(Level.Trial)
+    public void prepare() throws Exception {
+        source = BenchmarkInputs.load(input);
+        sourceFile = Files.createTempFile("benchmark", ".spl");
+        // Characters the platform charset can't encode are replaced, as in a non-UTF-8 locale
+        Files.write(sourceFile, source.getBytes(Charset.defaultCharset()));
+        program = parseSource();
+        table = new TableBuilder(false).buildSymbolTable(program);
+        new ProcedureBodyChecker().procedureCheck(program, table);
+        optimized = new ConstantFolder().fold(new Inliner().inline(program, table));
+        new VarAllocator(false).allocVars(optimized, table);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(sourceFile);
+    }
+
+    private Program parseSource() throws Exception {
+        return (Program) new Parser(new Scanner(new StringReader(source)), symbolFactory).parse().value;
+    }
+
+    @Benchmark
+    public int scan() throws IOException {
+        return countTokens(new Scanner(new StringReader(source)));
+    }
+
+    /**
+     * Scans the source file read by a {@link FileReader}, like the compiler used to.
+     */
+    @Benchmark
+    public int scanFileReader() throws IOException {
+        try (FileReader reader = new FileReader(sourceFile.toFile())) {
+            return countTokens(new Scanner(reader));
+        }
+    }
+
+    /**
+     * Scans the source file read by {@link SourceFile}, like the compiler does.
+     */
+    @Benchmark
+    public int scanMappedFile() throws IOException {
+        return countTokens(SourceFile.scan(sourceFile));
+    }
+
+    private static int countTokens(Scanner scanner) throws IOException {
+        int tokens = 0;
+        Symbol token;
+        do {
+            token = scanner.next_token();
+            tokens++;
+        } while (token.sym != Sym.EOF);
+        return tokens;
+    }
+
+    @Benchmark
+    public Program parse() throws Exception {
+        return parseSource();
+    }
+
+    @Benchmark
+    public SymbolTable tableBuild() {
+        return new TableBuilder(false).buildSymbolTable(program);
+    }
+
+    @Benchmark
+    public void semant() {
+        new ProcedureBodyChecker().procedureCheck(program, table);
+    }
+
+    @Benchmark
+    public void varAlloc() {
+        new VarAllocator(false).allocVars(optimized, table);
+    }
+
+    @Benchmark
+    public void codeGen() {
+        new CodeGenerator(Channels.newChannel(OutputStream.nullOutputStream())).generateCode(optimized, table);
+    }
+
+    @Benchmark
+    public void pipeline() throws Exception {
+        Pipeline.compile(new Scanner(new StringReader(source)), () -> Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+}
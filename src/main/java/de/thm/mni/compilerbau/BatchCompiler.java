@@ -0,0 +1,146 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.phases._01_scanner.SourceFile;
+import de.thm.mni.compilerbau.utils.SplError;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many SPL files in one run of the compiler.
+ * <p>
+ * Every file is compiled on its own by a pool of worker threads. The generated code of an input file 'name.spl' is
+ * written to 'name.s' next to it. An error in one file does not stop the compilation of the others, instead a
+ * summary of all files is printed once every file has been processed.
+ */
+class BatchCompiler {
+    private final int threads;
+
+    /**
+     * @param threads The number of worker threads compiling files in parallel.
+     */
+    BatchCompiler(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * The outcome of compiling a single file.
+     */
+    private static class Result {
+        final Path input;
+        final SplError error;
+        final Throwable failure;
+
+        Result(Path input, SplError error, Throwable failure) {
+            this.input = input;
+            this.error = error;
+            this.failure = failure;
+        }
+
+        boolean passed() {
+            return error == null && failure == null;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return String.format("FAIL  %s: error %d at line %d, column %d: %s",
+                        input, error.errorCode, error.position.line, error.position.column, error.getMessage());
+            }
+            if (failure != null) {
+                return String.format("FAIL  %s: %s", input,
+                        failure.getMessage() != null ? failure.getMessage() : failure.toString());
+            }
+            return String.format("PASS  %s", input);
+        }
+    }
+
+    /**
+     * Compiles all given files. Directories are replaced by the '.spl' files they contain.
+     *
+     * @param names The names of the input files and directories.
+     * @param out   The stream the summary is printed to.
+     * @return true if every file was compiled without an error.
+     * @throws IOException If a directory can not be listed.
+     */
+    boolean run(List<String> names, PrintStream out) throws IOException {
+        List<Path> inputs = collectInputs(names);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Result> results = new ArrayList<>();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path input : inputs) {
+                futures.add(executor.submit(() -> compile(input)));
+            }
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Batch compilation was interrupted", e);
+        } finally {
+            executor.shutdown();
+        }
+
+        results.forEach(out::println);
+        long failed = results.stream().filter(result -> !result.passed()).count();
+        out.printf("%d files compiled, %d passed, %d failed\n", results.size(), results.size() - failed, failed);
+        return failed == 0;
+    }
+
+    private static List<Path> collectInputs(List<String> names) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (String name : names) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    inputs.addAll(files
+                            .filter(file -> file.getFileName().toString().endsWith(".spl"))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                inputs.add(path);
+            }
+        }
+        return inputs;
+    }
+
+    private static Result compile(Path input) {
+        // The code is only written once the whole program compiled, so a failing file leaves no partial output behind.
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        try {
+            Pipeline.compile(SourceFile.scan(input), () -> Channels.newChannel(code));
+        } catch (SplError error) {
+            return new Result(input, error, null);
+        } catch (Exception | StackOverflowError e) {
+            // A deeply nested program may overflow the stack of its worker, which must not end the whole batch
+            return new Result(input, null, e);
+        }
+
+        try {
+            Files.write(outputFile(input), code.toByteArray());
+        } catch (IOException e) {
+            return new Result(input, null, e);
+        }
+        return new Result(input, null, null);
+    }
+
+    private static Path outputFile(Path input) {
+        String name = input.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return input.resolveSibling((extension > 0 ? name.substring(0, extension) : name) + ".s");
+    }
+}
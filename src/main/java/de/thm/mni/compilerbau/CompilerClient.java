@@ -0,0 +1,68 @@
+package de.thm.mni.compilerbau;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A thin client sending a single compile request to a running {@link CompilerServer}.
+ * <p>
+ * Behaves like a full run of the compiler: the generated code is written to the output file and errors are reported
+ * on the standard error stream, returning the error code as exit status.
+ */
+class CompilerClient {
+    private final int port;
+
+    /**
+     * @param port The local port the {@link CompilerServer} listens on.
+     */
+    CompilerClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Compiles the input file on the server and writes the received code to the output file.
+     *
+     * @param inFilename  The name of the SPL source file.
+     * @param outFilename The name of the file the generated code is written to.
+     * @return The exit status the compiler would have returned, 0 if the compilation succeeded.
+     * @throws IOException If a file can not be accessed or the server can not be reached.
+     */
+    int compile(String inFilename, String outFilename) throws IOException {
+        byte[] source = Files.readAllBytes(Path.of(inFilename));
+        // Checked before connecting, so a rejected file does not occupy a request thread of the server
+        if (source.length > CompilerServer.MAX_SOURCE_BYTESIZE) {
+            throw new IOException("Source file is too large for the compiler server");
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+             DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            out.writeInt(source.length);
+            out.write(source);
+            out.flush();
+
+            switch (in.readByte()) {
+                case CompilerServer.RESPONSE_CODE:
+                    Files.write(Path.of(outFilename), in.readNBytes(in.readInt()));
+                    return 0;
+                case CompilerServer.RESPONSE_SPL_ERROR:
+                    int errorCode = in.readInt();
+                    int line = in.readInt();
+                    int column = in.readInt();
+                    System.err.println("An error occurred:");
+                    System.err.printf("Line %d, Column %d: %s\n", line, column, CompilerServer.readText(in));
+                    return errorCode;
+                case CompilerServer.RESPONSE_FAILURE:
+                    System.err.println("An error occurred: " + CompilerServer.readText(in));
+                    return 1;
+                default:
+                    throw new IOException("Malformed response from compiler server");
+            }
+        }
+    }
+}
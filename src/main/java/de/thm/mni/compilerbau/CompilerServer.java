@@ -0,0 +1,175 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.utils.SplError;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A long-lived compiler process, that accepts compile requests on a local TCP port.
+ * <p>
+ * Keeping the compiler resident avoids paying JVM startup and JIT warm-up for every compiled file.
+ * Every connection carries exactly one request. Up to one request per processor is compiled concurrently, further
+ * connections wait in the backlog of the server socket until a request thread becomes free.
+ * <p>
+ * The protocol is binary and uses the encodings of {@link DataOutputStream}. Texts are sent as the length of their
+ * UTF-8 encoding as int, followed by the encoded bytes:
+ * <ul>
+ *     <li>Request: the source as text, at most {@link #MAX_SOURCE_BYTESIZE} bytes long.</li>
+ *     <li>Response {@link #RESPONSE_CODE}: the assembler code as text.</li>
+ *     <li>Response {@link #RESPONSE_SPL_ERROR}: error code, line and column as int, followed by the message as text.</li>
+ *     <li>Response {@link #RESPONSE_FAILURE}: the message of an unexpected failure as text.</li>
+ * </ul>
+ * The response kind is sent as a single byte in front of its data. A request, that is not completely received within
+ * {@link #READ_TIMEOUT_MILLIS}, is dropped without a response.
+ */
+class CompilerServer {
+    static final int DEFAULT_PORT = 4711;
+
+    static final byte RESPONSE_CODE = 0;
+    static final byte RESPONSE_SPL_ERROR = 1;
+    static final byte RESPONSE_FAILURE = 2;
+
+    static final int MAX_SOURCE_BYTESIZE = 1 << 26;
+    static final int READ_TIMEOUT_MILLIS = 30_000;
+    /**
+     * The time to wait after a failed accept, so a lasting failure does not keep the server busy.
+     */
+    static final int ACCEPT_RETRY_MILLIS = 100;
+
+    private final int port;
+
+    /**
+     * @param port The port the server listens on. Only connections from the loopback interface are accepted.
+     */
+    CompilerServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Returns the port configured by the system property 'spl.port' or {@link #DEFAULT_PORT}.
+     */
+    static int configuredPort() {
+        return Integer.getInteger("spl.port", DEFAULT_PORT);
+    }
+
+    /**
+     * Accepts requests until the process is terminated. A connection, that can not be accepted, is logged and
+     * skipped.
+     *
+     * @throws IOException If the server socket can not be opened.
+     */
+    void serve() throws IOException {
+        // Every request may hold a source of MAX_SOURCE_BYTESIZE, so their number has to be bounded
+        int threads = Runtime.getRuntime().availableProcessors();
+        Semaphore freeThreads = new Semaphore(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "spl-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.printf("SPL compiler listening on %s\n", serverSocket.getLocalSocketAddress());
+            while (!Thread.currentThread().isInterrupted()) {
+                freeThreads.acquireUninterruptibly();
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    // A failing connection, e.g. because the process ran out of file descriptors, only drops itself
+                    freeThreads.release();
+                    if (serverSocket.isClosed()) throw e;
+                    System.err.println("Accepting a request failed: " + e.getMessage());
+                    pause(ACCEPT_RETRY_MILLIS);
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        freeThreads.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void pause(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void handle(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            int length = in.readInt();
+            if (length < 0 || length > MAX_SOURCE_BYTESIZE) {
+                out.writeByte(RESPONSE_FAILURE);
+                writeText(out, String.format("Source of %d bytes exceeds the limit of %d bytes", length,
+                        MAX_SOURCE_BYTESIZE));
+            } else {
+                byte[] source = new byte[length];
+                in.readFully(source);
+                respond(new String(source, StandardCharsets.UTF_8), out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Request failed: " + e.getMessage());
+        }
+    }
+
+    private static void respond(String source, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        try {
+            Pipeline.compile(new Scanner(new StringReader(source)), () -> Channels.newChannel(code));
+        } catch (SplError error) {
+            out.writeByte(RESPONSE_SPL_ERROR);
+            out.writeInt(error.errorCode);
+            out.writeInt(error.position.line);
+            out.writeInt(error.position.column);
+            writeText(out, error.getMessage());
+            return;
+        } catch (Exception | StackOverflowError e) {
+            // A deeply nested program may overflow the stack of the request thread, which must not go unanswered
+            out.writeByte(RESPONSE_FAILURE);
+            writeText(out, e.getMessage() != null ? e.getMessage() : e.toString());
+            return;
+        }
+
+        out.writeByte(RESPONSE_CODE);
+        out.writeInt(code.size());
+        code.writeTo(out);
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,33 +1,26 @@
 package de.thm.mni.compilerbau;
 
-import de.thm.mni.compilerbau.absyn.Program;
 import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
-import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.phases._01_scanner.SourceFile;
 import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
-import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
-import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
-import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
-import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
 import de.thm.mni.compilerbau.utils.SplError;
-import java_cup.runtime.DefaultSymbolFactory;
+import de.thm.mni.compilerbau.utils.Statistics;
 import java_cup.runtime.Symbol;
-import java_cup.runtime.SymbolFactory;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.lang.System.exit;
 
 class Main {
-
-    /**
-     * CUP encourages you to use {@link java_cup.runtime.ComplexSymbolFactory} as a {@link SymbolFactory} which we
-     * don't need. The default implementation provides more than enough information for our needs.
-     */
-    @SuppressWarnings("deprecation")
-    private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
+    private static Statistics statistics = null;
+    private static boolean statisticsAsJson = false;
 
     private static void showToken(Symbol token) {
         String formatted = String.format("TOKEN = %s in line %d, column %d",
@@ -44,6 +37,9 @@ class Main {
 
     private static void showUsage(PrintStream out) {
         out.println("Usage: spl [options] <input file> <output file>");
+        out.println("       spl --batch <input files or directories>");
+        out.println("       spl --server");
+        out.println("       spl --client <input file> <output file>");
         out.println();
         out.println("Executes all compiler phases up to (and including) the specified one.");
         out.println("If no flag is specified, all phases are run and code is written to the output file.");
@@ -54,6 +50,19 @@ class Main {
         out.println("  --tables     Phase 4a: Builds a symbol table and prints its entries.");
         out.println("  --semant     Phase 4b: Performs the semantic analysis.");
         out.println("  --vars       Phase 5: Allocates memory space for variables and prints the amount of allocated memory.");
+        out.println("  --stats      Prints the time and memory spent in every phase and some counters to stderr.");
+        out.println("  --stats-json Like --stats, but prints the statistics as JSON.");
+        out.println("  --incremental");
+        out.println("               Only compiles procedures changed since the last compilation to the same output file.");
+        out.println("               The results of every compilation are kept in '<output file>.cache'.");
+        out.println("  --batch      Compiles every given file and every '.spl' file in the given directories in parallel.");
+        out.println("               The code for 'name.spl' is written to 'name.s', errors are listed in a summary.");
+        out.println("               No other option may be given.");
+        out.println("  --server     Keeps the compiler running and serves compile requests on a local port.");
+        out.printf("               The port defaults to %d and can be changed with the system property 'spl.port'.\n",
+                CompilerServer.DEFAULT_PORT);
+        out.println("  --client     Sends the input file to a running server instead of compiling it in this process.");
+        out.println("               Neither --server nor --client may be combined with other options.");
         out.println("  --help       Show this help.");
     }
 
@@ -64,6 +73,16 @@ class Main {
         exit(1);
     }
 
+    /**
+     * Prints the collected statistics, if enabled, and terminates the compiler.
+     */
+    private static void finish(int status) {
+        if (statistics != null) {
+            System.err.println(statisticsAsJson ? statistics.toJson() : statistics.format());
+        }
+        exit(status);
+    }
+
     public static void main(String[] args) {
         boolean optionTokens = false;
         boolean optionParse = false;
@@ -71,8 +90,12 @@ class Main {
         boolean optionTables = false;
         boolean optionSemant = false;
         boolean optionVars = false;
-        String inFilename = "";
-        String outFilename = "";
+        boolean optionStats = false;
+        boolean optionIncremental = false;
+        boolean optionBatch = false;
+        boolean optionServer = false;
+        boolean optionClient = false;
+        List<String> filenames = new ArrayList<>();
 
         for (String name : args) {
             switch (name) {
@@ -94,29 +117,97 @@ class Main {
                 case "--vars":
                     optionVars = true;
                     break;
+                case "--stats":
+                    optionStats = true;
+                    break;
+                case "--stats-json":
+                    optionStats = true;
+                    statisticsAsJson = true;
+                    break;
+                case "--incremental":
+                    optionIncremental = true;
+                    break;
+                case "--batch":
+                    optionBatch = true;
+                    break;
+                case "--server":
+                    optionServer = true;
+                    break;
+                case "--client":
+                    optionClient = true;
+                    break;
                 case "--help":
                     showUsage(System.out);
                     exit(0);
                 default:
                     if (!name.startsWith("--")) {
-                        if (inFilename.isEmpty()) inFilename = name;
-                        else if (outFilename.isEmpty()) outFilename = name;
-                        else usageError("Only one output file is allowed!");
+                        filenames.add(name);
                     } else {
                         usageError("Unknown option '%s'!", name);
                     }
             }
         }
 
+        if (optionServer) {
+            // The server compiles every request completely, the options of this process do not apply to it
+            if (optionTokens || optionParse || optionAbsyn || optionTables || optionSemant || optionVars
+                    || optionStats || optionIncremental || optionBatch || optionClient || !filenames.isEmpty()) {
+                usageError("--server can not be combined with other options or files!");
+            }
+            try {
+                new CompilerServer(CompilerServer.configuredPort()).serve();
+            } catch (IOException e) {
+                System.err.println("An error occurred: " + e.getMessage());
+                exit(1);
+            }
+            exit(0);
+        }
+
         // final check if filenames present
-        if (inFilename.isEmpty()) usageError("No input file!");
+        if (filenames.isEmpty()) usageError("No input file!");
+
+        if (optionBatch) {
+            // Every file of a batch is compiled completely and on its own
+            if (optionTokens || optionParse || optionAbsyn || optionTables || optionSemant || optionVars
+                    || optionStats || optionIncremental || optionClient) {
+                usageError("--batch can not be combined with other options!");
+            }
+            try {
+                boolean passed = new BatchCompiler(Runtime.getRuntime().availableProcessors()).run(filenames, System.out);
+                exit(passed ? 0 : 1);
+            } catch (IOException e) {
+                System.err.println("An error occurred: " + e.getMessage());
+                exit(1);
+            }
+        }
+
+        if (filenames.size() > 2) usageError("Only one output file is allowed!");
+        String inFilename = filenames.get(0);
+        String outFilename = filenames.size() > 1 ? filenames.get(1) : "";
+
+        if (optionClient) {
+            // A request only carries the source, so the server can only run a complete compilation
+            if (optionTokens || optionParse || optionAbsyn || optionTables || optionSemant || optionVars
+                    || optionStats || optionIncremental) {
+                usageError("--client can not be combined with other options!");
+            }
+            if (outFilename.isEmpty()) usageError("No output file!");
+            try {
+                exit(new CompilerClient(CompilerServer.configuredPort()).compile(inFilename, outFilename));
+            } catch (IOException e) {
+                System.err.println("An error occurred: " + e.getMessage());
+                exit(1);
+            }
+        }
+
         // Only display usage if compiler is expected to run the code-generation phase
         if (outFilename.isEmpty() &&
                 !(optionTokens || optionParse || optionAbsyn || optionTables || optionSemant || optionVars))
             usageError("No output file!");
+        if (optionIncremental && outFilename.isEmpty()) usageError("No output file!");
 
-        try (FileReader input = new FileReader(inFilename)) {
-            Scanner scanner = new Scanner(input);
+        try {
+            Scanner scanner = SourceFile.scan(Paths.get(inFilename));
 
             if (optionTokens) {
                 Symbol token;
@@ -128,43 +219,26 @@ class Main {
                 exit(0);
             }
 
-            //Parse errors are caught by the below exception handler
-            Program program = (Program) new Parser(scanner, symbolFactory).parse().value;
-
-            if (optionParse) {
-                System.out.println("Input parsed successfully!");
-                exit(0);
-            }
-
-            if (optionAbsyn) {
-                System.out.println(program);
-                exit(0);
-            }
-
-            final var table = new TableBuilder(optionTables).buildSymbolTable(program);
-            if (optionTables) exit(0);
-
-            new ProcedureBodyChecker().procedureCheck(program, table);
-            if (optionSemant) {
-                System.out.println("No semantic errors found!");
-                exit(0);
-            }
-
-            new VarAllocator(optionVars).allocVars(program, table);
-            if (optionVars) exit(0);
-
-            try (PrintWriter out = new PrintWriter(new FileWriter(outFilename))) {
-                new CodeGenerator(out).generateCode(program, table);
-            }
+            if (optionStats) statistics = Statistics.enable();
+            Pipeline.Phase lastPhase = optionParse ? Pipeline.Phase.PARSE
+                    : optionAbsyn ? Pipeline.Phase.ABSYN
+                    : optionTables ? Pipeline.Phase.TABLES
+                    : optionSemant ? Pipeline.Phase.SEMANT
+                    : optionVars ? Pipeline.Phase.VARS
+                    : Pipeline.Phase.CODEGEN;
+            Path cacheFile = optionIncremental ? Paths.get(outFilename + ".cache") : null;
+            Pipeline.compile(scanner, lastPhase, cacheFile, () -> FileChannel.open(Paths.get(outFilename),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+            finish(0);
 
         } catch (SplError error) {
             System.err.println("An error occurred:");
             System.err.printf("Line %d, Column %d: %s\n", error.position.line, error.position.column, error.getMessage());
-            exit(error.errorCode);
+            finish(error.errorCode);
         } catch (Exception e) {
             System.err.println("An error occurred: " + e.getMessage());
             e.printStackTrace();
-            exit(1);
+            finish(1);
         }
     }
 }
@@ -0,0 +1,193 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.absyn.ProcedureDeclaration;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_optimize.ConstantFolder;
+import de.thm.mni.compilerbau.phases._04c_optimize.Inliner;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.utils.PhaseEvent;
+import de.thm.mni.compilerbau.utils.SplError;
+import de.thm.mni.compilerbau.utils.Statistics;
+import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.Symbol;
+import java_cup.runtime.SymbolFactory;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Runs the compiler phases on a single SPL source. This is the only sequence of phases, used by every mode of the
+ * compiler.
+ * <p>
+ * A compilation may stop after an earlier phase and print its result, as requested by the options of {@link Main}.
+ * Otherwise nothing but the generated code is written.
+ * <p>
+ * All state of a compilation lives in the objects created here, so independent sources may be compiled concurrently.
+ * <p>
+ * The complete compilation is public, so the benchmarks measure exactly what the compiler runs.
+ */
+public final class Pipeline {
+    /**
+     * The phases a compilation may stop after.
+     */
+    enum Phase {
+        PARSE, ABSYN, TABLES, SEMANT, VARS, CODEGEN
+    }
+
+    /**
+     * The destination of the generated code. It is only opened once code generation starts, so a compilation failing
+     * or stopping earlier does not touch it.
+     */
+    public interface Output {
+        WritableByteChannel open() throws IOException;
+    }
+
+    /**
+     * CUP encourages you to use {@link java_cup.runtime.ComplexSymbolFactory} as a {@link SymbolFactory} which we
+     * don't need. The default implementation provides more than enough information for our needs.
+     */
+    @SuppressWarnings("deprecation")
+    static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
+
+    private Pipeline() {
+    }
+
+    /**
+     * Compiles the SPL program read by the scanner and writes the generated assembler code to the output.
+     *
+     * @param scanner The scanner for the source code of the SPL program.
+     * @param output  The destination of the generated code.
+     * @throws SplError  If the program contains an error.
+     * @throws Exception If the parser or the output fail for any other reason.
+     */
+    public static void compile(Scanner scanner, Output output) throws Exception {
+        compile(scanner, Phase.CODEGEN, null, output);
+    }
+
+    /**
+     * Runs all phases up to and including the last one. The result of the last phase is printed to standard output,
+     * unless it is code generation.
+     *
+     * @param scanner   The scanner for the source code of the SPL program.
+     * @param lastPhase The phase to stop after.
+     * @param cacheFile The file to keep the results of the compilation in, so the next compilation of the program
+     *                  only compiles the changed procedures, see {@link ProcedureCache}. null to compile everything.
+     * @param output    The destination of the generated code.
+     * @throws SplError  If the program contains an error.
+     * @throws Exception If the parser or the output fail for any other reason.
+     */
+    static void compile(Scanner scanner, Phase lastPhase, Path cacheFile, Output output) throws Exception {
+        PhaseEvent scanEvent = new PhaseEvent("scan");
+        Statistics.Part scan = Statistics.isEnabled() ? new Statistics.Part("scan") : null;
+        MeasuredScanner measured = scan != null || scanEvent.isEnabled()
+                ? new MeasuredScanner(scanner, scan, scanEvent)
+                : null;
+        java_cup.runtime.Scanner tokens = measured != null ? measured : scanner;
+        Program program;
+        try {
+            program = Statistics.measure("parse", scan,
+                    () -> (Program) new Parser(tokens, symbolFactory).parse().value);
+        } finally {
+            if (measured != null) measured.finish();
+        }
+        if (lastPhase == Phase.PARSE) {
+            System.out.println("Input parsed successfully!");
+            return;
+        }
+        if (lastPhase == Phase.ABSYN) {
+            System.out.println(program);
+            return;
+        }
+
+        SymbolTable table = Statistics.measure("tablebuild",
+                () -> new TableBuilder(lastPhase == Phase.TABLES).buildSymbolTable(program));
+        if (lastPhase == Phase.TABLES) return;
+
+        ProcedureCache cache = cacheFile != null
+                ? Statistics.measure("cache", () -> ProcedureCache.open(cacheFile, program, table))
+                : null;
+        Predicate<ProcedureDeclaration> isChanged = cache != null ? cache::isChanged : procedure -> true;
+
+        Statistics.measure("semant", () -> new ProcedureBodyChecker().procedureCheck(program, table, isChanged));
+        if (lastPhase == Phase.SEMANT) {
+            System.out.println("No semantic errors found!");
+            return;
+        }
+
+        Program optimized = Statistics.measure("optimize", () -> new ConstantFolder().fold(
+                new Inliner().inline(program, table, isChanged), isChanged));
+        Statistics.measure("varalloc",
+                () -> new VarAllocator(lastPhase == Phase.VARS).allocVars(optimized, table, isChanged));
+        if (lastPhase == Phase.VARS) return;
+
+        try (WritableByteChannel channel = output.open()) {
+            Map<Identifier, String> cachedCode = cache != null ? cache.cachedCode() : Map.of();
+            Map<Identifier, String> code = Statistics.measure("codegen",
+                    () -> new CodeGenerator(channel).generateCode(optimized, table, cachedCode));
+            if (cache != null) cache.save(table, code);
+        }
+    }
+
+    /**
+     * Passes the tokens of a scanner on to the parser, measuring the time spent scanning them. The tokens are scanned
+     * as the parser requests them, so errors are found in the same order as without measurement.
+     * <p>
+     * Scanning is also reported as a {@link PhaseEvent}, spanning from the first token to the end of the input. As the
+     * parser runs in between, the event overlaps the parse event, unlike the scan phase of the statistics, which only
+     * counts the time spent within the scanner.
+     */
+    private static class MeasuredScanner implements java_cup.runtime.Scanner {
+        private final Scanner scanner;
+        private final Statistics.Part scan;
+        private final PhaseEvent event;
+        private boolean begun = false, finished = false;
+
+        /**
+         * @param scan  The part of the parse phase spent scanning, null if statistics are disabled.
+         * @param event The event reporting the scan phase.
+         */
+        MeasuredScanner(Scanner scanner, Statistics.Part scan, PhaseEvent event) {
+            this.scanner = scanner;
+            this.scan = scan;
+            this.event = event;
+        }
+
+        @Override
+        public Symbol next_token() throws Exception {
+            if (!begun) {
+                event.begin();
+                begun = true;
+            }
+            if (scan != null) scan.begin();
+            try {
+                Symbol token = scanner.next_token();
+                if (token.sym != Sym.EOF) Statistics.count(Statistics.Counter.TOKENS);
+                else finish();
+                return token;
+            } finally {
+                if (scan != null) scan.end();
+            }
+        }
+
+        /**
+         * Commits the scan event, at the end of the input or once the parser stopped early.
+         */
+        void finish() {
+            if (begun && !finished) {
+                finished = true;
+                event.commit();
+            }
+        }
+    }
+}
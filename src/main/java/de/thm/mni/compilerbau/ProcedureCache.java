@@ -0,0 +1,322 @@
+package de.thm.mni.compilerbau;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.generator.SourcePrinter;
+import de.thm.mni.compilerbau.phases._04c_optimize.Inliner;
+import de.thm.mni.compilerbau.table.Entry;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the frame layout and the generated code of every procedure between two compilations of a program,
+ * as requested by the '--incremental' option.
+ * <p>
+ * Every procedure is identified by a hash of its source code, the source code of all procedures inlined into it and
+ * the table entries of all procedures and types they refer to. A procedure with the same hash as in the previous compilation is known to be valid and would be compiled
+ * to the same code again, so semantic analysis, variable allocation and code generation are skipped for it.
+ * Labels are local to their procedure, so the cached code stays valid when other procedures change.
+ * <p>
+ * Scanning, parsing and table building always run on the whole program, since the hashes depend on their results.
+ */
+final class ProcedureCache {
+    private static final int MAGIC = 0x53504c43;
+    /**
+     * Incremented whenever the code generated for a procedure changes, so code of older versions is not reused.
+     */
+    private static final int VERSION = 12;
+
+    /**
+     * Everything remembered about a single procedure.
+     */
+    private static class CachedProcedure {
+        final int argumentAreaSize, localVarAreaSize, outgoingAreaSize, spillAreaSize, registerVariables;
+        /**
+         * The offsets of all parameters followed by the offsets of all local variables.
+         */
+        final int[] offsets;
+        /**
+         * The registers of all parameters and local variables, in the same order as their offsets.
+         */
+        final int[] registers;
+        final String code;
+
+        CachedProcedure(int argumentAreaSize, int localVarAreaSize, int outgoingAreaSize, int spillAreaSize,
+                        int registerVariables, int[] offsets, int[] registers, String code) {
+            this.argumentAreaSize = argumentAreaSize;
+            this.localVarAreaSize = localVarAreaSize;
+            this.outgoingAreaSize = outgoingAreaSize;
+            this.spillAreaSize = spillAreaSize;
+            this.registerVariables = registerVariables;
+            this.offsets = offsets;
+            this.registers = registers;
+            this.code = code;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, CachedProcedure> previous;
+    private final Map<ProcedureDeclaration, String> hashes = new ConcurrentHashMap<>();
+
+    private ProcedureCache(Path file, Map<String, CachedProcedure> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens the cache of a program and restores the frame layouts of all unchanged procedures.
+     * A missing or unreadable cache file is treated like an empty cache.
+     *
+     * @param file    The file the cache is stored in.
+     * @param program The program after table building.
+     * @param table   The global symbol table of the program.
+     * @return The cache for the current compilation of the program.
+     */
+    static ProcedureCache open(Path file, Program program, SymbolTable table) {
+        ProcedureCache cache = new ProcedureCache(file, read(file));
+        Map<Identifier, ProcedureDeclaration> inlinable = Inliner.inlinableProcedures(program);
+        program.declarations.parallelStream()
+                .filter(declaration -> declaration instanceof ProcedureDeclaration)
+                .map(declaration -> (ProcedureDeclaration) declaration)
+                .forEach(procedure -> cache.hashes.put(procedure, hash(procedure, table, inlinable)));
+        cache.hashes.forEach((procedure, hash) -> {
+            CachedProcedure cached = cache.previous.get(hash);
+            if (cached != null) restoreLayout(procedure, table, cached);
+        });
+        return cache;
+    }
+
+    /**
+     * @return true if the procedure has to be compiled again. Procedures unknown to the cache, like the ones rewritten
+     * by the optimizer, are always changed.
+     */
+    boolean isChanged(ProcedureDeclaration procedure) {
+        String hash = hashes.get(procedure);
+        return hash == null || !previous.containsKey(hash);
+    }
+
+    /**
+     * @return The previously generated code of all unchanged procedures by their names.
+     */
+    Map<Identifier, String> cachedCode() {
+        Map<Identifier, String> code = new HashMap<>();
+        hashes.forEach((procedure, hash) -> {
+            CachedProcedure cached = previous.get(hash);
+            if (cached != null) code.put(procedure.name, cached.code);
+        });
+        return code;
+    }
+
+    /**
+     * Replaces the stored cache with the results of the current compilation.
+     *
+     * @param table The global symbol table after variable allocation.
+     * @param code  The generated code of every procedure by its name.
+     */
+    void save(SymbolTable table, Map<Identifier, String> code) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(hashes.size());
+            for (Map.Entry<ProcedureDeclaration, String> procedure : hashes.entrySet()) {
+                ProcedureDeclaration declaration = procedure.getKey();
+                ProcedureEntry entry = (ProcedureEntry) table.lookup(declaration.name);
+                output.writeUTF(procedure.getValue());
+                output.writeInt(entry.argumentAreaSize);
+                output.writeInt(entry.localVarAreaSize);
+                output.writeInt(entry.outgoingAreaSize);
+                output.writeInt(entry.spillAreaSize);
+                output.writeInt(entry.registerVariables);
+                output.writeInt(declaration.parameters.size() + declaration.variables.size());
+                for (ParameterDeclaration parameter : declaration.parameters) {
+                    VariableEntry variableEntry = (VariableEntry) entry.localTable.lookup(parameter.name);
+                    output.writeInt(variableEntry.offset);
+                    output.writeInt(variableEntry.register);
+                }
+                for (VariableDeclaration variable : declaration.variables) {
+                    VariableEntry variableEntry = (VariableEntry) entry.localTable.lookup(variable.name);
+                    output.writeInt(variableEntry.offset);
+                    output.writeInt(variableEntry.register);
+                }
+                byte[] bytes = code.get(declaration.name).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, CachedProcedure> read(Path file) {
+        Map<String, CachedProcedure> procedures = new HashMap<>();
+        if (!Files.isRegularFile(file)) return procedures;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return procedures;
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String hash = input.readUTF();
+                int argumentAreaSize = input.readInt();
+                int localVarAreaSize = input.readInt();
+                int outgoingAreaSize = input.readInt();
+                int spillAreaSize = input.readInt();
+                int registerVariables = input.readInt();
+                int[] offsets = new int[input.readInt()];
+                int[] registers = new int[offsets.length];
+                for (int j = 0; j < offsets.length; j++) {
+                    offsets[j] = input.readInt();
+                    registers[j] = input.readInt();
+                }
+                byte[] code = new byte[input.readInt()];
+                input.readFully(code);
+                procedures.put(hash, new CachedProcedure(argumentAreaSize, localVarAreaSize, outgoingAreaSize, spillAreaSize,
+                        registerVariables, offsets, registers,
+                        new String(code, StandardCharsets.UTF_8)));
+            }
+            return procedures;
+        } catch (IOException e) {
+            // A damaged cache only costs a full compilation
+            return new HashMap<>();
+        }
+    }
+
+    private static void restoreLayout(ProcedureDeclaration procedure, SymbolTable table, CachedProcedure cached) {
+        ProcedureEntry entry = (ProcedureEntry) table.lookup(procedure.name);
+        entry.argumentAreaSize = cached.argumentAreaSize;
+        entry.localVarAreaSize = cached.localVarAreaSize;
+        entry.outgoingAreaSize = cached.outgoingAreaSize;
+        entry.spillAreaSize = cached.spillAreaSize;
+        entry.registerVariables = cached.registerVariables;
+
+        int i = 0;
+        for (ParameterDeclaration parameter : procedure.parameters) {
+            VariableEntry variableEntry = (VariableEntry) entry.localTable.lookup(parameter.name);
+            entry.parameterTypes.get(i).offset = cached.offsets[i];
+            variableEntry.offset = cached.offsets[i];
+            variableEntry.register = cached.registers[i];
+            i++;
+        }
+        for (VariableDeclaration variable : procedure.variables) {
+            VariableEntry variableEntry = (VariableEntry) entry.localTable.lookup(variable.name);
+            variableEntry.offset = cached.offsets[i];
+            variableEntry.register = cached.registers[i];
+            i++;
+        }
+    }
+
+    /**
+     * Hashes the source code of a procedure and of all procedures inlined into it together with the table entries of
+     * every global name they refer to.
+     */
+    private static String hash(ProcedureDeclaration procedure, SymbolTable table,
+                               Map<Identifier, ProcedureDeclaration> inlinable) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        PrintWriter output = new PrintWriter(new OutputStreamWriter(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest), StandardCharsets.UTF_8));
+        procedure.accept(new SourcePrinter(output));
+
+        GlobalNames names = new GlobalNames();
+        procedure.accept(names);
+        // The names referred to by every inlined procedure are collected as well, they may be inlined in turn
+        List<ProcedureDeclaration> inlined = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            for (String name : names.names) {
+                ProcedureDeclaration callee = inlinable.get(new Identifier(name));
+                if (callee != null && !inlined.contains(callee)) inlined.add(callee);
+            }
+            if (i == inlined.size()) break;
+            inlined.get(i).accept(names);
+        }
+        for (ProcedureDeclaration callee : inlined) callee.accept(new SourcePrinter(output));
+        for (String name : names.names) {
+            Entry entry = table.lookup(new Identifier(name));
+            output.printf("%s -> %s\n", name, entry);
+        }
+        output.flush();
+
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Collects the names of all procedures and types a procedure refers to.
+     */
+    private static class GlobalNames extends DoNothingVisitor {
+        final TreeSet<String> names = new TreeSet<>();
+
+        @Override
+        public void visit(ProcedureDeclaration procedureDeclaration) {
+            procedureDeclaration.parameters.forEach(parameter -> parameter.accept(this));
+            procedureDeclaration.variables.forEach(variable -> variable.accept(this));
+            procedureDeclaration.body.forEach(statement -> statement.accept(this));
+        }
+
+        @Override
+        public void visit(ParameterDeclaration parameterDeclaration) {
+            parameterDeclaration.typeExpression.accept(this);
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            variableDeclaration.typeExpression.accept(this);
+        }
+
+        @Override
+        public void visit(ArrayTypeExpression arrayTypeExpression) {
+            arrayTypeExpression.baseType.accept(this);
+        }
+
+        @Override
+        public void visit(NamedTypeExpression namedTypeExpression) {
+            names.add(namedTypeExpression.name.toString());
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            names.add(callStatement.procedureName.toString());
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.body.accept(this);
+        }
+    }
+}
@@ -45,6 +45,30 @@ public class BinaryExpression extends Expression {
             return !isArithmetic();
         }
 
+        /**
+         * Compares two values with this comparison operator.
+         *
+         * @return true if the comparison holds for the values.
+         */
+        public boolean compare(int left, int right) {
+            switch (this) {
+                case EQU:
+                    return left == right;
+                case NEQ:
+                    return left != right;
+                case LST:
+                    return left < right;
+                case LSE:
+                    return left <= right;
+                case GRT:
+                    return left > right;
+                case GRE:
+                    return left >= right;
+                default:
+                    throw new IllegalStateException(this + " is not a comparison operator");
+            }
+        }
+
         /**
          * Flips the operator if it is a comparison operator
          *
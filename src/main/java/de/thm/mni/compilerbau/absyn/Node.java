@@ -1,6 +1,7 @@
 package de.thm.mni.compilerbau.absyn;
 
 import de.thm.mni.compilerbau.absyn.visitor.Visitable;
+import de.thm.mni.compilerbau.utils.Statistics;
 
 import java.util.Arrays;
 import java.util.List;
@@ -16,6 +17,7 @@ public abstract class Node implements Visitable {
 
     Node(Position position) {
         this.position = position;
+        Statistics.count(Statistics.Counter.AST_NODES);
     }
 
     static String formatAst(String name, List<String> arguments) {
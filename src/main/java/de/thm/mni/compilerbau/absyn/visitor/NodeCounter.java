@@ -0,0 +1,132 @@
+package de.thm.mni.compilerbau.absyn.visitor;
+
+import de.thm.mni.compilerbau.absyn.*;
+
+/**
+ * This visitor counts the nodes of a subtree of the AST, including the root of the subtree.
+ */
+public class NodeCounter implements Visitor {
+    private int count = 0;
+
+    /**
+     * @param root The root of the subtree.
+     * @return The number of nodes in the subtree.
+     */
+    public static int count(Node root) {
+        NodeCounter counter = new NodeCounter();
+        root.accept(counter);
+        return counter.count;
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        count++;
+        arrayAccess.array.accept(this);
+        arrayAccess.index.accept(this);
+    }
+
+    @Override
+    public void visit(ArrayTypeExpression arrayTypeExpression) {
+        count++;
+        arrayTypeExpression.baseType.accept(this);
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        count++;
+        assignStatement.target.accept(this);
+        assignStatement.value.accept(this);
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        count++;
+        binaryExpression.leftOperand.accept(this);
+        binaryExpression.rightOperand.accept(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        count++;
+        callStatement.argumentList.forEach(argument -> argument.accept(this));
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        count++;
+        compoundStatement.statements.forEach(statement -> statement.accept(this));
+    }
+
+    @Override
+    public void visit(EmptyStatement emptyStatement) {
+        count++;
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        count++;
+        ifStatement.condition.accept(this);
+        ifStatement.thenPart.accept(this);
+        ifStatement.elsePart.accept(this);
+    }
+
+    @Override
+    public void visit(IntLiteral intLiteral) {
+        count++;
+    }
+
+    @Override
+    public void visit(NamedTypeExpression namedTypeExpression) {
+        count++;
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        count++;
+    }
+
+    @Override
+    public void visit(ParameterDeclaration parameterDeclaration) {
+        count++;
+        parameterDeclaration.typeExpression.accept(this);
+    }
+
+    @Override
+    public void visit(ProcedureDeclaration procedureDeclaration) {
+        count++;
+        procedureDeclaration.parameters.forEach(parameter -> parameter.accept(this));
+        procedureDeclaration.variables.forEach(variable -> variable.accept(this));
+        procedureDeclaration.body.forEach(statement -> statement.accept(this));
+    }
+
+    @Override
+    public void visit(Program program) {
+        count++;
+        program.declarations.forEach(declaration -> declaration.accept(this));
+    }
+
+    @Override
+    public void visit(TypeDeclaration typeDeclaration) {
+        count++;
+        typeDeclaration.typeExpression.accept(this);
+    }
+
+    @Override
+    public void visit(VariableDeclaration variableDeclaration) {
+        count++;
+        variableDeclaration.typeExpression.accept(this);
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        count++;
+        variableExpression.variable.accept(this);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        count++;
+        whileStatement.condition.accept(this);
+        whileStatement.body.accept(this);
+    }
+}
@@ -0,0 +1,387 @@
+package de.thm.mni.compilerbau.generator;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.BinaryExpression.Operator;
+import de.thm.mni.compilerbau.table.Identifier;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Generates random SPL programs, that are syntactically and semantically valid, to measure how the compiler scales.
+ * <p>
+ * The same {@link Settings} always produce the same program. Programs are generated one procedure at a time, so even
+ * very large programs can be written to a file without holding their whole syntax tree in memory.
+ * <p>
+ * The generated programs also run without errors: array indices are either constants or counters of loops over
+ * the array size, divisors are positive constants and procedures only call procedures declared before them.
+ */
+public class ProgramGenerator {
+    /**
+     * The knobs controlling the shape of the generated program.
+     */
+    public static class Settings {
+        /** The seed of the random number generator. */
+        public long seed = 0;
+        /** The number of procedures in addition to the main procedure. */
+        public int procedures = 10;
+        /** The number of statements in every procedure body, counting nested statements as well. */
+        public int statements = 20;
+        /** The maximum depth of arithmetic expression trees. */
+        public int expressionDepth = 3;
+        /** The number of dimensions of the most nested array type. 0 to generate no arrays at all. */
+        public int arrayDimensions = 2;
+        /** The maximum number of parameters of a procedure. */
+        public int parameters = 3;
+        /** The probability of a statement being a call to another procedure. */
+        public double callDensity = 0.1;
+    }
+
+    private static final Position GENERATED = new Position(0, 0);
+    private static final int ARRAY_SIZE = 8;
+    private static final int INT_LOCALS = 4;
+    private static final int MAX_NESTING = 3;
+
+    private static final int INT_PARAMETER = 0;
+    private static final int REF_INT_PARAMETER = -1;
+
+    private static final Operator[] ARITHMETIC = {Operator.ADD, Operator.SUB, Operator.MUL, Operator.DIV};
+    private static final Operator[] COMPARISON = {Operator.EQU, Operator.NEQ, Operator.LST, Operator.LSE, Operator.GRT, Operator.GRE};
+
+    private final Settings settings;
+
+    private Random random;
+    /**
+     * The parameter kinds of every procedure. {@link #INT_PARAMETER}, {@link #REF_INT_PARAMETER} or the number of
+     * dimensions of an array passed by reference.
+     */
+    private int[][] signatures;
+
+    // The state of the procedure that is currently generated
+    private int procedureIndex;
+    private int budget;
+    private List<Identifier> intVariables;
+    private List<List<Identifier>> arrayVariables;
+    private List<Identifier> counters;
+    private Deque<Identifier> activeCounters;
+
+    /**
+     * @param settings The settings controlling the generated program.
+     */
+    public ProgramGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Generates the whole syntax tree of a program.
+     */
+    public Program generate() {
+        List<GlobalDeclaration> declarations = new ArrayList<>();
+        generate(declarations::add);
+        return new Program(GENERATED, declarations);
+    }
+
+    /**
+     * Generates a program and prints its source code, dropping the syntax tree of each procedure once it is printed.
+     *
+     * @param output The writer the source code is printed to.
+     */
+    public void generate(PrintWriter output) {
+        SourcePrinter printer = new SourcePrinter(output);
+        generate(declaration -> declaration.accept(printer));
+    }
+
+    private void generate(Consumer<GlobalDeclaration> declarations) {
+        random = new Random(settings.seed);
+        signatures = new int[settings.procedures][];
+        for (int i = 0; i < settings.procedures; i++) {
+            signatures[i] = signature();
+        }
+
+        for (int dimension = 1; dimension <= settings.arrayDimensions; dimension++) {
+            declarations.accept(new TypeDeclaration(GENERATED, arrayTypeName(dimension), arrayTypeExpression(dimension)));
+        }
+        for (int i = 0; i <= settings.procedures; i++) {
+            declarations.accept(procedure(i));
+        }
+    }
+
+    private int[] signature() {
+        int[] signature = new int[random.nextInt(settings.parameters + 1)];
+        for (int i = 0; i < signature.length; i++) {
+            double kind = random.nextDouble();
+            if (kind < 0.5) signature[i] = INT_PARAMETER;
+            else if (kind < 0.75 || settings.arrayDimensions == 0) signature[i] = REF_INT_PARAMETER;
+            else signature[i] = 1 + random.nextInt(settings.arrayDimensions);
+        }
+        return signature;
+    }
+
+    private static Identifier arrayTypeName(int dimension) {
+        return new Identifier("Vec" + dimension);
+    }
+
+    private static TypeExpression arrayTypeExpression(int dimension) {
+        TypeExpression baseType = new NamedTypeExpression(GENERATED,
+                dimension == 1 ? new Identifier("int") : arrayTypeName(dimension - 1));
+        return new ArrayTypeExpression(GENERATED, baseType, ARRAY_SIZE);
+    }
+
+    /**
+     * Generates the procedure with the given index. The index {@link Settings#procedures} denotes the main procedure.
+     */
+    private ProcedureDeclaration procedure(int index) {
+        boolean isMain = index == settings.procedures;
+        int[] signature = isMain ? new int[0] : signatures[index];
+
+        procedureIndex = index;
+        budget = settings.statements;
+        intVariables = new ArrayList<>();
+        arrayVariables = new ArrayList<>();
+        counters = new ArrayList<>();
+        activeCounters = new ArrayDeque<>();
+        for (int dimension = 0; dimension <= settings.arrayDimensions; dimension++) {
+            arrayVariables.add(new ArrayList<>());
+        }
+
+        List<ParameterDeclaration> parameters = new ArrayList<>();
+        for (int i = 0; i < signature.length; i++) {
+            Identifier name = new Identifier("x" + i);
+            if (signature[i] == INT_PARAMETER || signature[i] == REF_INT_PARAMETER) {
+                parameters.add(new ParameterDeclaration(GENERATED, name, intType(), signature[i] == REF_INT_PARAMETER));
+                intVariables.add(name);
+            } else {
+                parameters.add(new ParameterDeclaration(GENERATED, name, arrayType(signature[i]), true));
+                arrayVariables.get(signature[i]).add(name);
+            }
+        }
+
+        List<VariableDeclaration> variables = new ArrayList<>();
+        List<Statement> body = new ArrayList<>();
+        for (int i = 0; i < INT_LOCALS; i++) {
+            Identifier name = new Identifier("i" + i);
+            variables.add(new VariableDeclaration(GENERATED, name, intType()));
+            body.add(assignment(new NamedVariable(GENERATED, name), literal(random.nextInt(100))));
+            intVariables.add(name);
+        }
+        for (int dimension = 1; dimension <= settings.arrayDimensions; dimension++) {
+            Identifier name = new Identifier("a" + dimension);
+            variables.add(new VariableDeclaration(GENERATED, name, arrayType(dimension)));
+            arrayVariables.get(dimension).add(name);
+        }
+
+        while (budget > 0) {
+            statement(body, 0);
+        }
+
+        if (isMain) {
+            for (int i = 0; i < INT_LOCALS; i++) {
+                body.add(call(new Identifier("printi"), List.of(variable(new Identifier("i" + i)))));
+                body.add(call(new Identifier("printc"), List.of(literal('\n'))));
+            }
+        }
+
+        for (Identifier counter : counters) {
+            variables.add(new VariableDeclaration(GENERATED, counter, intType()));
+        }
+
+        Identifier name = new Identifier(isMain ? "main" : "p" + index);
+        return new ProcedureDeclaration(GENERATED, name, parameters, variables, body);
+    }
+
+    private void statement(List<Statement> statements, int nesting) {
+        budget--;
+        double kind = random.nextDouble();
+        boolean mayNest = nesting < MAX_NESTING && budget >= 2;
+        double callDensity = procedureIndex > 0 ? settings.callDensity : 0;
+
+        if (kind < callDensity) {
+            statements.add(procedureCall());
+        } else if (mayNest && kind < callDensity + 0.1) {
+            Statement elsePart = random.nextBoolean()
+                    ? new CompoundStatement(GENERATED, block(nesting + 1))
+                    : new EmptyStatement(GENERATED);
+            statements.add(new IfStatement(GENERATED, condition(), new CompoundStatement(GENERATED, block(nesting + 1)), elsePart));
+        } else if (mayNest && kind < callDensity + 0.2) {
+            loop(statements, nesting);
+        } else {
+            statements.add(assignment(assignableVariable(), expression(settings.expressionDepth)));
+        }
+    }
+
+    private List<Statement> block(int nesting) {
+        List<Statement> statements = new ArrayList<>();
+        int size = 1 + random.nextInt(3);
+        for (int i = 0; i < size && (i == 0 || budget > 0); i++) {
+            statement(statements, nesting);
+        }
+        return statements;
+    }
+
+    /**
+     * Generates a loop counting a fresh counter from 0 to the array size, so the counter is a valid index in its body.
+     */
+    private void loop(List<Statement> statements, int nesting) {
+        Identifier counter = new Identifier("c" + counters.size());
+        counters.add(counter);
+
+        statements.add(assignment(new NamedVariable(GENERATED, counter), literal(0)));
+
+        activeCounters.push(counter);
+        List<Statement> body = block(nesting + 1);
+        activeCounters.pop();
+        body.add(assignment(new NamedVariable(GENERATED, counter),
+                new BinaryExpression(GENERATED, Operator.ADD, variable(counter), literal(1))));
+
+        BinaryExpression condition = new BinaryExpression(GENERATED, Operator.LST, variable(counter), literal(ARRAY_SIZE));
+        statements.add(new WhileStatement(GENERATED, condition, new CompoundStatement(GENERATED, body)));
+    }
+
+    private CallStatement procedureCall() {
+        int callee = random.nextInt(procedureIndex);
+        int[] signature = signatures[callee];
+
+        List<Expression> arguments = new ArrayList<>();
+        for (int kind : signature) {
+            if (kind == INT_PARAMETER) {
+                arguments.add(expression(settings.expressionDepth));
+            } else if (kind == REF_INT_PARAMETER) {
+                arguments.add(new VariableExpression(GENERATED, assignableVariable()));
+            } else {
+                arguments.add(variable(pick(arrayVariables.get(kind))));
+            }
+        }
+        return call(new Identifier("p" + callee), arguments);
+    }
+
+    private BinaryExpression condition() {
+        Operator operator = COMPARISON[random.nextInt(COMPARISON.length)];
+        int depth = Math.max(settings.expressionDepth - 1, 0);
+        return new BinaryExpression(GENERATED, operator, expression(depth), expression(depth));
+    }
+
+    private Expression expression(int depth) {
+        if (depth <= 0 || random.nextInt(4) == 0) {
+            return random.nextInt(3) == 0
+                    ? literal(random.nextInt(100))
+                    : new VariableExpression(GENERATED, readableVariable());
+        }
+
+        Operator operator = ARITHMETIC[random.nextInt(ARITHMETIC.length)];
+        Expression left = expression(depth - 1);
+        Expression right = operator == Operator.DIV ? literal(1 + random.nextInt(9)) : expression(depth - 1);
+        return new BinaryExpression(GENERATED, operator, left, right);
+    }
+
+    /**
+     * Returns an integer variable, that may be assigned without affecting the termination of loops.
+     */
+    private Variable assignableVariable() {
+        if (settings.arrayDimensions > 0 && random.nextBoolean()) return arrayElement();
+        return new NamedVariable(GENERATED, pick(intVariables));
+    }
+
+    private Variable readableVariable() {
+        if (!activeCounters.isEmpty() && random.nextInt(4) == 0) {
+            return new NamedVariable(GENERATED, activeCounters.peek());
+        }
+        return assignableVariable();
+    }
+
+    private Variable arrayElement() {
+        int dimension = 1 + random.nextInt(settings.arrayDimensions);
+        Variable element = new NamedVariable(GENERATED, pick(arrayVariables.get(dimension)));
+        for (int i = 0; i < dimension; i++) {
+            element = new ArrayAccess(GENERATED, element, index());
+        }
+        return element;
+    }
+
+    private Expression index() {
+        if (!activeCounters.isEmpty() && random.nextBoolean()) {
+            List<Identifier> active = new ArrayList<>(activeCounters);
+            return variable(pick(active));
+        }
+        return literal(random.nextInt(ARRAY_SIZE));
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private static TypeExpression intType() {
+        return new NamedTypeExpression(GENERATED, new Identifier("int"));
+    }
+
+    private static TypeExpression arrayType(int dimension) {
+        return new NamedTypeExpression(GENERATED, arrayTypeName(dimension));
+    }
+
+    private static IntLiteral literal(int value) {
+        return new IntLiteral(GENERATED, value);
+    }
+
+    private static VariableExpression variable(Identifier name) {
+        return new VariableExpression(GENERATED, new NamedVariable(GENERATED, name));
+    }
+
+    private static AssignStatement assignment(Variable target, Expression value) {
+        return new AssignStatement(GENERATED, target, value);
+    }
+
+    private static CallStatement call(Identifier procedure, List<Expression> arguments) {
+        return new CallStatement(GENERATED, procedure, arguments);
+    }
+
+    private static void showUsage() {
+        System.err.println("Usage: ProgramGenerator [options] <output file>");
+        System.err.println();
+        System.err.println("Generates a random, valid SPL program. The size of the program grows with procedures * statements.");
+        System.err.println("Options:");
+        System.err.println("  --seed=<n>          Seed of the random number generator (default 0).");
+        System.err.println("  --procedures=<n>    Number of procedures besides main (default 10).");
+        System.err.println("  --statements=<n>    Number of statements per procedure (default 20).");
+        System.err.println("  --depth=<n>         Maximum depth of expressions (default 3).");
+        System.err.println("  --dimensions=<n>    Number of dimensions of the largest array type (default 2).");
+        System.err.println("  --parameters=<n>    Maximum number of parameters per procedure (default 3).");
+        System.err.println("  --calls=<p>         Probability of a statement being a procedure call (default 0.1).");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Settings settings = new Settings();
+        String outFilename = null;
+
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--seed=")) settings.seed = Long.parseLong(value);
+            else if (arg.startsWith("--procedures=")) settings.procedures = Integer.parseInt(value);
+            else if (arg.startsWith("--statements=")) settings.statements = Integer.parseInt(value);
+            else if (arg.startsWith("--depth=")) settings.expressionDepth = Integer.parseInt(value);
+            else if (arg.startsWith("--dimensions=")) settings.arrayDimensions = Integer.parseInt(value);
+            else if (arg.startsWith("--parameters=")) settings.parameters = Integer.parseInt(value);
+            else if (arg.startsWith("--calls=")) settings.callDensity = Double.parseDouble(value);
+            else if (!arg.startsWith("--") && outFilename == null) outFilename = arg;
+            else {
+                showUsage();
+                System.exit(1);
+            }
+        }
+
+        if (outFilename == null) {
+            showUsage();
+            System.exit(1);
+        }
+
+        try (PrintWriter output = new PrintWriter(new BufferedWriter(new FileWriter(outFilename), 1 << 16))) {
+            new ProgramGenerator(settings).generate(output);
+        }
+    }
+}
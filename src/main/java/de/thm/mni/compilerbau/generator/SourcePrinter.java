@@ -0,0 +1,259 @@
+package de.thm.mni.compilerbau.generator;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.Visitor;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Prints an abstract syntax tree as SPL source code, that parses back into an equivalent tree.
+ * <p>
+ * Operands of arithmetic operators are parenthesized whenever they are binary expressions themselves, so the printed
+ * code does not depend on operator precedence.
+ */
+public class SourcePrinter implements Visitor {
+    private static final String INDENTATION = "  ";
+
+    private final PrintWriter output;
+    private int level = 0;
+
+    /**
+     * @param output The writer the source code is printed to.
+     */
+    public SourcePrinter(PrintWriter output) {
+        this.output = output;
+    }
+
+    private void indent() {
+        for (int i = 0; i < level; i++) output.print(INDENTATION);
+    }
+
+    private void printOperand(Expression operand) {
+        if (operand instanceof BinaryExpression) {
+            output.print('(');
+            operand.accept(this);
+            output.print(')');
+        } else {
+            operand.accept(this);
+        }
+    }
+
+    private void printBlock(List<Statement> statements) {
+        output.println('{');
+        level++;
+        statements.forEach(statement -> statement.accept(this));
+        level--;
+        indent();
+        output.print('}');
+    }
+
+    /**
+     * Prints a statement, that is nested in an if- or while-statement on the same line as its parent.
+     */
+    private void printNested(Statement statement) {
+        if (statement instanceof CompoundStatement) {
+            printBlock(((CompoundStatement) statement).statements);
+            output.println();
+        } else {
+            output.println();
+            level++;
+            statement.accept(this);
+            level--;
+        }
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        arrayAccess.array.accept(this);
+        output.print('[');
+        arrayAccess.index.accept(this);
+        output.print(']');
+    }
+
+    @Override
+    public void visit(ArrayTypeExpression arrayTypeExpression) {
+        output.print("array [");
+        output.print(arrayTypeExpression.arraySize);
+        output.print("] of ");
+        arrayTypeExpression.baseType.accept(this);
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        indent();
+        assignStatement.target.accept(this);
+        output.print(" := ");
+        assignStatement.value.accept(this);
+        output.println(';');
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        printOperand(binaryExpression.leftOperand);
+        switch (binaryExpression.operator) {
+            case ADD:
+                output.print(" + ");
+                break;
+            case SUB:
+                output.print(" - ");
+                break;
+            case MUL:
+                output.print(" * ");
+                break;
+            case DIV:
+                output.print(" / ");
+                break;
+            case EQU:
+                output.print(" = ");
+                break;
+            case NEQ:
+                output.print(" # ");
+                break;
+            case LST:
+                output.print(" < ");
+                break;
+            case LSE:
+                output.print(" <= ");
+                break;
+            case GRT:
+                output.print(" > ");
+                break;
+            case GRE:
+                output.print(" >= ");
+                break;
+        }
+        printOperand(binaryExpression.rightOperand);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        indent();
+        output.print(callStatement.procedureName);
+        output.print('(');
+        for (int i = 0; i < callStatement.argumentList.size(); i++) {
+            if (i > 0) output.print(", ");
+            callStatement.argumentList.get(i).accept(this);
+        }
+        output.println(");");
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        indent();
+        printBlock(compoundStatement.statements);
+        output.println();
+    }
+
+    @Override
+    public void visit(EmptyStatement emptyStatement) {
+        indent();
+        output.println(';');
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        indent();
+        output.print("if (");
+        ifStatement.condition.accept(this);
+        output.print(") ");
+        if (ifStatement.thenPart instanceof IfStatement && !(ifStatement.elsePart instanceof EmptyStatement)) {
+            // Braces keep the else part from being attached to the nested if-statement
+            printBlock(List.of(ifStatement.thenPart));
+            output.println();
+        } else {
+            printNested(ifStatement.thenPart);
+        }
+        if (!(ifStatement.elsePart instanceof EmptyStatement)) {
+            indent();
+            output.print("else ");
+            printNested(ifStatement.elsePart);
+        }
+    }
+
+    @Override
+    public void visit(IntLiteral intLiteral) {
+        if (intLiteral.value < 0) {
+            // Negative literals can only be written as unary minus, which is only allowed in parentheses here
+            output.print("(-");
+            output.print(-(long) intLiteral.value);
+            output.print(')');
+        } else {
+            output.print(intLiteral.value);
+        }
+    }
+
+    @Override
+    public void visit(NamedTypeExpression namedTypeExpression) {
+        output.print(namedTypeExpression.name);
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        output.print(namedVariable.name);
+    }
+
+    @Override
+    public void visit(ParameterDeclaration parameterDeclaration) {
+        if (parameterDeclaration.isReference) output.print("ref ");
+        output.print(parameterDeclaration.name);
+        output.print(": ");
+        parameterDeclaration.typeExpression.accept(this);
+    }
+
+    @Override
+    public void visit(ProcedureDeclaration procedureDeclaration) {
+        output.print("proc ");
+        output.print(procedureDeclaration.name);
+        output.print('(');
+        for (int i = 0; i < procedureDeclaration.parameters.size(); i++) {
+            if (i > 0) output.print(", ");
+            procedureDeclaration.parameters.get(i).accept(this);
+        }
+        output.println(") {");
+        level++;
+        procedureDeclaration.variables.forEach(variable -> variable.accept(this));
+        procedureDeclaration.body.forEach(statement -> statement.accept(this));
+        level--;
+        output.println('}');
+        output.println();
+    }
+
+    @Override
+    public void visit(Program program) {
+        program.declarations.forEach(declaration -> declaration.accept(this));
+    }
+
+    @Override
+    public void visit(TypeDeclaration typeDeclaration) {
+        output.print("type ");
+        output.print(typeDeclaration.name);
+        output.print(" = ");
+        typeDeclaration.typeExpression.accept(this);
+        output.println(';');
+    }
+
+    @Override
+    public void visit(VariableDeclaration variableDeclaration) {
+        indent();
+        output.print("var ");
+        output.print(variableDeclaration.name);
+        output.print(": ");
+        variableDeclaration.typeExpression.accept(this);
+        output.println(';');
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        variableExpression.variable.accept(this);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        indent();
+        output.print("while (");
+        whileStatement.condition.accept(this);
+        output.print(") ");
+        printNested(whileStatement.body);
+    }
+}
@@ -0,0 +1,118 @@
+package de.thm.mni.compilerbau.phases._01_scanner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads SPL source files for the {@link Scanner}.
+ * <p>
+ * The file is mapped into memory and its bytes are read straight into the buffer of the scanner, so the source is
+ * neither read through intermediate buffers nor held decoded as a whole. SPL sources are ASCII, whose bytes are copied
+ * as characters. Only from the first other byte on the rest of the file is decoded with the platform charset,
+ * replacing malformed input, like a {@link java.io.FileReader} does.
+ */
+public final class SourceFile {
+    private SourceFile() {
+    }
+
+    /**
+     * @param file The source file.
+     * @return A scanner for the contents of the file.
+     * @throws IOException If the file can't be read.
+     */
+    public static Scanner scan(Path file) throws IOException {
+        return new Scanner(open(file));
+    }
+
+    /**
+     * @param file The source file.
+     * @return A reader for the contents of the file.
+     * @throws IOException If the file can't be read.
+     */
+    public static Reader open(Path file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static final class MappedReader extends Reader {
+        private final MappedByteBuffer bytes;
+        private CharsetDecoder decoder = null;
+        private boolean flushed = false;
+        /**
+         * The low surrogate of a decoded character, which did not fit into the last read.
+         */
+        private int pending = -1;
+
+        MappedReader(MappedByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (pending >= 0) {
+                buffer[offset] = (char) pending;
+                pending = -1;
+                return 1;
+            }
+
+            if (decoder == null) {
+                int position = bytes.position();
+                int end = Math.min(bytes.limit(), position + length);
+                int read = 0;
+                while (position < end) {
+                    byte b = bytes.get(position);
+                    if (b < 0) {
+                        decoder = Charset.defaultCharset().newDecoder()
+                                .onMalformedInput(CodingErrorAction.REPLACE)
+                                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                        break;
+                    }
+                    buffer[offset + read++] = (char) b;
+                    position++;
+                }
+                bytes.position(position);
+                if (read > 0) return read;
+                if (decoder == null) return -1;
+            }
+            return decode(buffer, offset, length);
+        }
+
+        private int decode(char[] buffer, int offset, int length) throws IOException {
+            if (flushed) return -1;
+            CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+            CoderResult result = decoder.decode(bytes, out, true);
+            if (result.isUnderflow()) {
+                result = decoder.flush(out);
+                flushed = result.isUnderflow();
+            }
+            if (result.isError()) result.throwException();
+
+            if (out.position() == offset && result.isOverflow()) {
+                // A character of two chars does not fit into a single one
+                CharBuffer pair = CharBuffer.allocate(2);
+                decoder.decode(bytes, pair, true);
+                buffer[offset] = pair.get(0);
+                pending = pair.get(1);
+                return 1;
+            }
+            int read = out.position() - offset;
+            return read > 0 ? read : -1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
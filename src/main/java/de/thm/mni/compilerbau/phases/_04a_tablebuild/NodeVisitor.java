@@ -8,6 +8,7 @@ import de.thm.mni.compilerbau.utils.SplError;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class NodeVisitor extends DoNothingVisitor {
 
@@ -15,40 +16,76 @@ public class NodeVisitor extends DoNothingVisitor {
 
     boolean showTables;
 
+    /**
+     * Decides whether an entry found by a lookup was already declared. Local tables built after the global table
+     * is complete must not see the global declarations following their procedure.
+     */
+    Predicate<Entry> isDeclared;
+
     public NodeVisitor(SymbolTable symbolTable,boolean showTables) {
+        this(symbolTable,showTables,entry -> true);
+    }
+
+    NodeVisitor(SymbolTable symbolTable,boolean showTables,Predicate<Entry> isDeclared) {
         this.symbolTable = symbolTable;
         this.showTables = showTables;
+        this.isDeclared = isDeclared;
     }
 
 
 
     public void visit(TypeDeclaration typeDeclaration){
         typeDeclaration.typeExpression.accept(this);
-        symbolTable.enter(new TypeEntry(typeDeclaration.name,typeDeclaration.typeExpression.dataType),SplError.RedeclarationAsType(typeDeclaration.position,typeDeclaration.name));
+        symbolTable.enter(new TypeEntry(typeDeclaration.name,typeDeclaration.typeExpression.dataType),() -> SplError.RedeclarationAsType(typeDeclaration.position,typeDeclaration.name));
     }
 
     @Override
     public void visit(ProcedureDeclaration procedureDeclaration) {
         SymbolTable localTable = new SymbolTable(symbolTable);
+        List<ParameterType> parameterTypeList = visitParameters(procedureDeclaration,localTable);
+        visitVariables(procedureDeclaration,localTable,isDeclared);
+        enterProcedure(procedureDeclaration,localTable,parameterTypeList);
+
+        if(showTables){
+            System.out.printf("symbol table at end of procedure '%s':\n" +localTable.toString()+"\n",procedureDeclaration.name);
+        }
+    }
+
+    /**
+     * Enters the parameters of a procedure into its local table.
+     *
+     * @return The types of the parameters.
+     */
+    List<ParameterType> visitParameters(ProcedureDeclaration procedureDeclaration,SymbolTable localTable){
         NodeVisitor localVisitor = new NodeVisitor(localTable,showTables);
         List<ParameterType> parameterTypeList = new ArrayList<>();
 
         procedureDeclaration.parameters.forEach(item -> item.accept(localVisitor));
         procedureDeclaration.parameters.forEach(item -> parameterTypeList.add(new ParameterType(item.typeExpression.dataType,item.isReference)));
+        return parameterTypeList;
+    }
 
+    /**
+     * Enters the local variables of a procedure into its local table.
+     *
+     * @param isDeclared Decides which entries of the global table are visible to the procedure.
+     */
+    void visitVariables(ProcedureDeclaration procedureDeclaration,SymbolTable localTable,Predicate<Entry> isDeclared){
+        NodeVisitor localVisitor = new NodeVisitor(localTable,showTables,isDeclared);
         procedureDeclaration.variables.forEach(item -> item.accept(localVisitor));
+    }
 
-        symbolTable.enter(new ProcedureEntry(procedureDeclaration.name,localTable,parameterTypeList),SplError.RedeclarationAsProcedure(procedureDeclaration.position,procedureDeclaration.name));
-
-        if(showTables){
-            System.out.printf("symbol table at end of procedure '%s':\n" +localTable.toString()+"\n",procedureDeclaration.name);
-        }
+    /**
+     * Enters the procedure itself into the global table.
+     */
+    void enterProcedure(ProcedureDeclaration procedureDeclaration,SymbolTable localTable,List<ParameterType> parameterTypeList){
+        symbolTable.enter(new ProcedureEntry(procedureDeclaration.name,localTable,parameterTypeList),() -> SplError.RedeclarationAsProcedure(procedureDeclaration.position,procedureDeclaration.name));
     }
 
 
     public void visit(VariableDeclaration variableDeclaration){
         variableDeclaration.typeExpression.accept(this);
-        symbolTable.enter(new VariableEntry(variableDeclaration.name,variableDeclaration.typeExpression.dataType,false),SplError.RedeclarationAsVariable(variableDeclaration.position,variableDeclaration.name));
+        symbolTable.enter(new VariableEntry(variableDeclaration.name,variableDeclaration.typeExpression.dataType,false),() -> SplError.RedeclarationAsVariable(variableDeclaration.position,variableDeclaration.name));
     }
 
     public void visit(ParameterDeclaration parameterDeclaration){
@@ -59,7 +96,7 @@ public class NodeVisitor extends DoNothingVisitor {
             throw SplError.MustBeAReferenceParameter(parameterDeclaration.position,parameterDeclaration.name);
         }
 
-        symbolTable.enter(new VariableEntry(parameterDeclaration.name,parameterDeclaration.typeExpression.dataType,parameterDeclaration.isReference),SplError.RedeclarationAsParameter(parameterDeclaration.position,parameterDeclaration.name));
+        symbolTable.enter(new VariableEntry(parameterDeclaration.name,parameterDeclaration.typeExpression.dataType,parameterDeclaration.isReference),() -> SplError.RedeclarationAsParameter(parameterDeclaration.position,parameterDeclaration.name));
     }
 
     public void visit(ArrayTypeExpression arrayTypeExpression){
@@ -68,7 +105,7 @@ public class NodeVisitor extends DoNothingVisitor {
     }
 
     public void visit(NamedTypeExpression namedTypeExpression){
-        Entry e =symbolTable.find(namedTypeExpression.name).orElseThrow(() -> SplError.UndefinedType(namedTypeExpression.position,namedTypeExpression.name));
+        Entry e =symbolTable.find(namedTypeExpression.name).filter(isDeclared).orElseThrow(() -> SplError.UndefinedType(namedTypeExpression.position,namedTypeExpression.name));
         if(!(e instanceof TypeEntry)){
             throw SplError.NotAType(namedTypeExpression.position,namedTypeExpression.name);
         }else{
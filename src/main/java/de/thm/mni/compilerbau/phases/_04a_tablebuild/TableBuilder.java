@@ -9,8 +9,12 @@ import de.thm.mni.compilerbau.types.Type;
 import de.thm.mni.compilerbau.utils.NotImplemented;
 import de.thm.mni.compilerbau.utils.SplError;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
 
 /**
  * This class is used to create and populate a {@link SymbolTable} containing entries for every symbol in the currently
@@ -34,12 +38,81 @@ public class TableBuilder{
         SymbolTable symbolTable = TableInitializer.initializeGlobalTable();
         NodeVisitor nodeVisitor = new NodeVisitor(symbolTable,showTables);
 
-        for(Visitable visitable: program.declarations){
-            visitable.accept(nodeVisitor);
+        if(showTables){
+            // The table of a procedure is printed together with the global table as far as it is built at the end
+            // of the procedure, so everything has to be built in source order.
+            for(Visitable visitable: program.declarations){
+                visitable.accept(nodeVisitor);
+            }
+            return symbolTable;
+        }
+
+        // First pass: enter types and procedures into the global table in source order. The parameters are part of
+        // the signature of a procedure, so they are entered here as well.
+        Map<Entry,Integer> declarationIndex = new IdentityHashMap<>();
+        List<LocalTable> localTables = new ArrayList<>();
+        SplError globalError = null;
+        int index = 0;
+        for(GlobalDeclaration declaration: program.declarations){
+            try{
+                if(declaration instanceof ProcedureDeclaration){
+                    ProcedureDeclaration procedureDeclaration = (ProcedureDeclaration) declaration;
+                    SymbolTable localTable = new SymbolTable(symbolTable);
+                    List<ParameterType> parameterTypes = nodeVisitor.visitParameters(procedureDeclaration,localTable);
+                    // The variables of this procedure are entered before the procedure itself, so their errors
+                    // take precedence over an error while entering the procedure
+                    localTables.add(new LocalTable(procedureDeclaration,localTable,index));
+                    nodeVisitor.enterProcedure(procedureDeclaration,localTable,parameterTypes);
+                }else{
+                    declaration.accept(nodeVisitor);
+                }
+            }catch(SplError error){
+                globalError = error;
+                break;
+            }
+            declarationIndex.put(symbolTable.lookup(declaration.name),index++);
+        }
+
+        // Second pass: enter the variables of all procedures concurrently. A procedure may only see the global
+        // declarations preceding it, as if everything was built in source order.
+        Optional<SplError> localError = localTables.parallelStream()
+                .map(local -> local.build(nodeVisitor,entry -> declarationIndex.getOrDefault(entry,-1) < local.index))
+                .flatMap(Optional::stream)
+                .findFirst();
+        if(localError.isPresent()){
+            throw localError.get();
+        }
+        if(globalError != null){
+            throw globalError;
         }
 
         return symbolTable;
     }
 
+    /**
+     * The local table of a procedure, whose variables are still to be entered.
+     */
+    private static class LocalTable{
+        final ProcedureDeclaration procedureDeclaration;
+        final SymbolTable table;
+        final int index;
 
+        LocalTable(ProcedureDeclaration procedureDeclaration,SymbolTable table,int index){
+            this.procedureDeclaration = procedureDeclaration;
+            this.table = table;
+            this.index = index;
+        }
+
+        /**
+         * @return The first error found while entering the variables, if any.
+         */
+        Optional<SplError> build(NodeVisitor nodeVisitor,Predicate<Entry> isDeclared){
+            try{
+                nodeVisitor.visitVariables(procedureDeclaration,table,isDeclared);
+                return Optional.empty();
+            }catch(SplError error){
+                return Optional.of(error);
+            }
+        }
+    }
 }
@@ -2,20 +2,29 @@ package de.thm.mni.compilerbau.phases._04b_semant;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
-import de.thm.mni.compilerbau.absyn.visitor.Visitable;
 import de.thm.mni.compilerbau.table.*;
 import de.thm.mni.compilerbau.types.ArrayType;
 import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.ProcedureEvent;
 import de.thm.mni.compilerbau.utils.SplError;
 
+import java.util.Optional;
+import java.util.function.Predicate;
+
 public class NodeVisitorSemant extends DoNothingVisitor {
 
     ProcedureBodyChecker procedureBodyChecker;
     SymbolTable symbolTable;
+    Predicate<ProcedureDeclaration> isChanged;
 
     public NodeVisitorSemant(ProcedureBodyChecker procedureBodyChecker, SymbolTable symbolTable) {
+        this(procedureBodyChecker, symbolTable, procedureDeclaration -> true);
+    }
+
+    public NodeVisitorSemant(ProcedureBodyChecker procedureBodyChecker, SymbolTable symbolTable, Predicate<ProcedureDeclaration> isChanged) {
         this.procedureBodyChecker = procedureBodyChecker;
         this.symbolTable = symbolTable;
+        this.isChanged = isChanged;
     }
 
     @Override
@@ -31,24 +40,46 @@ public class NodeVisitorSemant extends DoNothingVisitor {
             throw SplError.MainMustNotHaveParameters();
         }
 
-        for(Visitable visitable: program.declarations){
-            if(visitable instanceof ProcedureDeclaration){
-                visitable.accept(this);
-            }
+        // Procedure bodies only read the symbol tables, so they are checked concurrently on the common fork-join pool.
+        // The stream is ordered, so the first error found belongs to the first erroneous procedure in the source,
+        // just as if the procedures were checked one after another.
+        Optional<SplError> error = program.declarations.parallelStream()
+                .filter(declaration -> declaration instanceof ProcedureDeclaration)
+                .filter(declaration -> isChanged.test((ProcedureDeclaration) declaration))
+                .map(this::check)
+                .flatMap(Optional::stream)
+                .findFirst();
+        if(error.isPresent()){
+            throw error.get();
         }
+    }
 
+    /**
+     * Checks the body of a single procedure.
+     *
+     * @return The first error found in the procedure, if any.
+     */
+    private Optional<SplError> check(GlobalDeclaration procedureDeclaration){
+        try{
+            procedureDeclaration.accept(this);
+            return Optional.empty();
+        }catch(SplError error){
+            return Optional.of(error);
+        }
     }
 
     public void visit(ProcedureDeclaration procedureDeclaration){
+        ProcedureEvent event = new ProcedureEvent("semant");
         ProcedureEntry procEntry = (ProcedureEntry) symbolTable.lookup(procedureDeclaration.name);
         NodeVisitorSemant localVisitor = new NodeVisitorSemant(procedureBodyChecker,procEntry.localTable);
         for (Statement statement:procedureDeclaration.body) {
             statement.accept(localVisitor);
         }
+        event.finish(procedureDeclaration, 0);
     }
 
     public void visit(CallStatement callStatement){
-        if(!(symbolTable.getUpperLevel().orElseThrow().lookup(callStatement.procedureName,SplError.UndefinedProcedure(callStatement.position,callStatement.procedureName)) instanceof ProcedureEntry)){
+        if(!(symbolTable.getUpperLevel().orElseThrow().lookup(callStatement.procedureName,() -> SplError.UndefinedProcedure(callStatement.position,callStatement.procedureName)) instanceof ProcedureEntry)){
             throw SplError.CallOfNonProcedure(callStatement.position,callStatement.procedureName);
         }
         ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.getUpperLevel().orElseThrow().lookup(callStatement.procedureName);
@@ -60,21 +91,23 @@ public class NodeVisitorSemant extends DoNothingVisitor {
         }
 
         for(int i=0;i<callStatement.argumentList.size();i++){
-            callStatement.argumentList.get(i).accept(this);
+            final Expression argument = callStatement.argumentList.get(i);
+            final int index = i;
+            argument.accept(this);
 
             if(procedureEntry.parameterTypes.get(i).isReference){
-                if(!(callStatement.argumentList.get(i) instanceof VariableExpression)){
-                    throw SplError.ArgumentMustBeAVariable(callStatement.argumentList.get(i).position,callStatement.procedureName,i);
+                if(!(argument instanceof VariableExpression)){
+                    throw SplError.ArgumentMustBeAVariable(argument.position,callStatement.procedureName,i);
                 }
             }
-            procedureBodyChecker.checkType(procedureEntry.parameterTypes.get(i).type,callStatement.argumentList.get(i).dataType,SplError.ArgumentTypeMismatch(callStatement.argumentList.get(i).position,callStatement.procedureName, i));
+            procedureBodyChecker.checkType(procedureEntry.parameterTypes.get(i).type,argument.dataType,() -> SplError.ArgumentTypeMismatch(argument.position,callStatement.procedureName, index));
         }
     }
 
     public void visit(IfStatement ifStatement){
         ifStatement.condition.accept(this);
 
-        procedureBodyChecker.checkType(PrimitiveType.boolType, ifStatement.condition.dataType,SplError.IfConditionMustBeBoolean(ifStatement.position));
+        procedureBodyChecker.checkType(PrimitiveType.boolType, ifStatement.condition.dataType,() -> SplError.IfConditionMustBeBoolean(ifStatement.position));
         ifStatement.thenPart.accept(this);
         ifStatement.elsePart.accept(this);
     }
@@ -82,7 +115,7 @@ public class NodeVisitorSemant extends DoNothingVisitor {
     public void visit(WhileStatement whileStatement){
         whileStatement.condition.accept(this);
 
-        procedureBodyChecker.checkType(PrimitiveType.boolType, whileStatement.condition.dataType,SplError.WhileConditionMustBeBoolean(whileStatement.position));
+        procedureBodyChecker.checkType(PrimitiveType.boolType, whileStatement.condition.dataType,() -> SplError.WhileConditionMustBeBoolean(whileStatement.position));
         whileStatement.body.accept(this);
     }
 
@@ -92,7 +125,7 @@ public class NodeVisitorSemant extends DoNothingVisitor {
         arrayAccess.array.accept(this);
 
 
-        procedureBodyChecker.checkType(PrimitiveType.intType,arrayAccess.index.dataType,SplError.IndexingWithNonInteger(arrayAccess.position));
+        procedureBodyChecker.checkType(PrimitiveType.intType,arrayAccess.index.dataType,() -> SplError.IndexingWithNonInteger(arrayAccess.position));
 
         if(arrayAccess.array.dataType instanceof ArrayType){
             arrayAccess.dataType = ((ArrayType) arrayAccess.array.dataType).baseType;
@@ -105,7 +138,7 @@ public class NodeVisitorSemant extends DoNothingVisitor {
     }
     public void visit(NamedVariable namedVariable){
 
-        Entry e = symbolTable.lookup(namedVariable.name,SplError.UndefinedVariable(namedVariable.position,namedVariable.name));
+        Entry e = symbolTable.lookup(namedVariable.name,() -> SplError.UndefinedVariable(namedVariable.position,namedVariable.name));
         if(!(e instanceof VariableEntry)){
             throw SplError.NotAVariable(namedVariable.position,namedVariable.name);
         }
@@ -118,8 +151,8 @@ public class NodeVisitorSemant extends DoNothingVisitor {
 
 
 
-        procedureBodyChecker.checkType(PrimitiveType.intType,assignStatement.target.dataType,SplError.AssignmentRequiresIntegers(assignStatement.position));
-        procedureBodyChecker.checkType(assignStatement.target.dataType,assignStatement.value.dataType,SplError.AssignmentHasDifferentTypes(assignStatement.position));
+        procedureBodyChecker.checkType(PrimitiveType.intType,assignStatement.target.dataType,() -> SplError.AssignmentRequiresIntegers(assignStatement.position));
+        procedureBodyChecker.checkType(assignStatement.target.dataType,assignStatement.value.dataType,() -> SplError.AssignmentHasDifferentTypes(assignStatement.position));
     }
 
     public void visit(VariableExpression variableExpression){
@@ -137,14 +170,14 @@ public class NodeVisitorSemant extends DoNothingVisitor {
         binaryExpression.leftOperand.accept(this);
         binaryExpression.rightOperand.accept(this);
 
-        procedureBodyChecker.checkType(binaryExpression.leftOperand.dataType,binaryExpression.rightOperand.dataType,SplError.OperatorDifferentTypes(binaryExpression.position));
+        procedureBodyChecker.checkType(binaryExpression.leftOperand.dataType,binaryExpression.rightOperand.dataType,() -> SplError.OperatorDifferentTypes(binaryExpression.position));
         if(binaryExpression.operator.isComparison()){
-            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.leftOperand.dataType,SplError.ComparisonNonInteger(binaryExpression.leftOperand.position));
-            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.rightOperand.dataType,SplError.ComparisonNonInteger(binaryExpression.rightOperand.position));
+            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.leftOperand.dataType,() -> SplError.ComparisonNonInteger(binaryExpression.leftOperand.position));
+            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.rightOperand.dataType,() -> SplError.ComparisonNonInteger(binaryExpression.rightOperand.position));
             binaryExpression.dataType = PrimitiveType.boolType;
         }else{
-            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.leftOperand.dataType,SplError.ArithmeticOperatorNonInteger(binaryExpression.leftOperand.position));
-            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.rightOperand.dataType,SplError.ArithmeticOperatorNonInteger(binaryExpression.rightOperand.position));
+            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.leftOperand.dataType,() -> SplError.ArithmeticOperatorNonInteger(binaryExpression.leftOperand.position));
+            procedureBodyChecker.checkType(PrimitiveType.intType,binaryExpression.rightOperand.dataType,() -> SplError.ArithmeticOperatorNonInteger(binaryExpression.rightOperand.position));
             binaryExpression.dataType = PrimitiveType.intType;
         }
     }
@@ -9,6 +9,9 @@ import de.thm.mni.compilerbau.types.Type;
 import de.thm.mni.compilerbau.utils.NotImplemented;
 import de.thm.mni.compilerbau.utils.SplError;
 
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
 /**
  * This class is used to check if the currently compiled SPL program is semantically valid.
  * Every statement and expression has to be checked, to ensure that every type is correct.
@@ -19,12 +22,24 @@ import de.thm.mni.compilerbau.utils.SplError;
 public class ProcedureBodyChecker {
 
     public void procedureCheck(Program program, SymbolTable globalTable) {
-        NodeVisitorSemant nodeVisitorSemant = new NodeVisitorSemant(this,globalTable);
+        procedureCheck(program, globalTable, procedureDeclaration -> true);
+    }
+
+    /**
+     * Checks the program, but only the bodies of the selected procedures.
+     *
+     * @param isChanged Selects the procedures to check, the others are known to be valid.
+     */
+    public void procedureCheck(Program program, SymbolTable globalTable, Predicate<ProcedureDeclaration> isChanged) {
+        NodeVisitorSemant nodeVisitorSemant = new NodeVisitorSemant(this,globalTable,isChanged);
         program.accept(nodeVisitorSemant);
     }
 
 
-    protected void checkType(Type expected, Type actual, SplError error) throws SplError {
-        if(expected != actual) throw error;
+    /**
+     * @param error Builds the error to throw if the types differ. Only called if the check fails.
+     */
+    protected void checkType(Type expected, Type actual, Supplier<SplError> error) throws SplError {
+        if(expected != actual) throw error.get();
     }
 }
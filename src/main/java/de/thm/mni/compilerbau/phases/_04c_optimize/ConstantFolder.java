@@ -0,0 +1,43 @@
+package de.thm.mni.compilerbau.phases._04c_optimize;
+
+import de.thm.mni.compilerbau.absyn.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * This class is used to evaluate constant expressions of the currently compiled SPL program at compile time and to
+ * remove statements, that are never executed because their condition is constant.
+ * <p>
+ * The abstract syntax tree is immutable, so every node containing a folded node is replaced by a new one. Nodes
+ * without any folded node are kept as they are. The folder runs after the semantic analysis, so every new expression
+ * receives the data type of the expression it replaces.
+ */
+public class ConstantFolder {
+
+    public Program fold(Program program) {
+        return fold(program, procedureDeclaration -> true);
+    }
+
+    /**
+     * Folds the bodies of the selected procedures only.
+     *
+     * @param isChanged Selects the procedures to fold, the others are kept as they are.
+     * @return The program with all constant expressions and conditions folded.
+     */
+    public Program fold(Program program, Predicate<ProcedureDeclaration> isChanged) {
+        FoldingVisitor visitor = new FoldingVisitor();
+        List<GlobalDeclaration> declarations = new ArrayList<>(program.declarations.size());
+        boolean folded = false;
+        for (GlobalDeclaration declaration : program.declarations) {
+            GlobalDeclaration result = declaration;
+            if (declaration instanceof ProcedureDeclaration && isChanged.test((ProcedureDeclaration) declaration)) {
+                result = visitor.fold((ProcedureDeclaration) declaration);
+            }
+            folded |= result != declaration;
+            declarations.add(result);
+        }
+        return folded ? new Program(program.position, List.copyOf(declarations)) : program;
+    }
+}
@@ -0,0 +1,219 @@
+package de.thm.mni.compilerbau.phases._04c_optimize;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.utils.Statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds the constant expressions and conditions of a procedure body.
+ * <p>
+ * Arithmetic is evaluated on 32 bit integers with wraparound, exactly like the ECO32 does. A division is only folded
+ * if it cannot fail: a division by zero and the overflowing division of the smallest integer by -1 are left for the
+ * ECO32 to execute. Division truncates towards zero on both.
+ * <p>
+ * An if-statement with a constant condition is replaced by the branch that is always executed, a while-statement
+ * whose condition is always false is removed. A while-statement whose condition is always true keeps its condition
+ * with both operands folded to literals, the code generator emits no comparison for it.
+ * <p>
+ * Every visit stores the folded node in one of the result fields, the unchanged node if nothing was folded.
+ */
+class FoldingVisitor extends DoNothingVisitor {
+    private Expression expression;
+    private Variable variable;
+    private Statement statement;
+
+    ProcedureDeclaration fold(ProcedureDeclaration procedureDeclaration) {
+        List<Statement> body = foldStatements(procedureDeclaration.body);
+        if (body == procedureDeclaration.body) return procedureDeclaration;
+        return new ProcedureDeclaration(procedureDeclaration.position, procedureDeclaration.name,
+                procedureDeclaration.parameters, procedureDeclaration.variables, body);
+    }
+
+    private Expression fold(Expression expression) {
+        expression.accept(this);
+        return this.expression;
+    }
+
+    private Variable fold(Variable variable) {
+        variable.accept(this);
+        return this.variable;
+    }
+
+    private Statement fold(Statement statement) {
+        statement.accept(this);
+        return this.statement;
+    }
+
+    /**
+     * @return The same list if no statement was folded.
+     */
+    private List<Statement> foldStatements(List<Statement> statements) {
+        List<Statement> folded = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Statement statement : statements) {
+            Statement result = fold(statement);
+            changed |= result != statement;
+            folded.add(result);
+        }
+        return changed ? List.copyOf(folded) : statements;
+    }
+
+    /**
+     * @return true if the condition is a comparison of two literals.
+     */
+    private static boolean isConstant(BinaryExpression condition) {
+        return condition.leftOperand instanceof IntLiteral && condition.rightOperand instanceof IntLiteral;
+    }
+
+    private static boolean evaluate(BinaryExpression condition) {
+        return condition.operator.compare(((IntLiteral) condition.leftOperand).value,
+                ((IntLiteral) condition.rightOperand).value);
+    }
+
+    @Override
+    public void visit(IntLiteral intLiteral) {
+        expression = intLiteral;
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        Expression left = fold(binaryExpression.leftOperand);
+        Expression right = fold(binaryExpression.rightOperand);
+
+        if (binaryExpression.operator.isArithmetic()
+                && left instanceof IntLiteral && right instanceof IntLiteral) {
+            int x = ((IntLiteral) left).value;
+            int y = ((IntLiteral) right).value;
+            Integer value = null;
+            switch (binaryExpression.operator) {
+                case ADD:
+                    value = x + y;
+                    break;
+                case SUB:
+                    value = x - y;
+                    break;
+                case MUL:
+                    value = x * y;
+                    break;
+                case DIV:
+                    if (y != 0 && !(x == Integer.MIN_VALUE && y == -1)) value = x / y;
+                    break;
+            }
+            if (value != null) {
+                Statistics.count(Statistics.Counter.FOLDED_CONSTANTS);
+                IntLiteral literal = new IntLiteral(binaryExpression.position, value);
+                literal.dataType = binaryExpression.dataType;
+                expression = literal;
+                return;
+            }
+        }
+
+        if (left == binaryExpression.leftOperand && right == binaryExpression.rightOperand) {
+            expression = binaryExpression;
+        } else {
+            BinaryExpression folded = new BinaryExpression(binaryExpression.position, binaryExpression.operator, left, right);
+            folded.dataType = binaryExpression.dataType;
+            expression = folded;
+        }
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        Variable folded = fold(variableExpression.variable);
+        if (folded == variableExpression.variable) {
+            expression = variableExpression;
+        } else {
+            VariableExpression result = new VariableExpression(variableExpression.position, folded);
+            result.dataType = variableExpression.dataType;
+            expression = result;
+        }
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        variable = namedVariable;
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        Variable array = fold(arrayAccess.array);
+        Expression index = fold(arrayAccess.index);
+        if (array == arrayAccess.array && index == arrayAccess.index) {
+            variable = arrayAccess;
+        } else {
+            ArrayAccess result = new ArrayAccess(arrayAccess.position, array, index);
+            result.dataType = arrayAccess.dataType;
+            variable = result;
+        }
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        Variable target = fold(assignStatement.target);
+        Expression value = fold(assignStatement.value);
+        statement = target == assignStatement.target && value == assignStatement.value
+                ? assignStatement
+                : new AssignStatement(assignStatement.position, target, value);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        List<Expression> arguments = new ArrayList<>(callStatement.argumentList.size());
+        boolean changed = false;
+        for (Expression argument : callStatement.argumentList) {
+            Expression result = fold(argument);
+            changed |= result != argument;
+            arguments.add(result);
+        }
+        statement = changed
+                ? new CallStatement(callStatement.position, callStatement.procedureName, List.copyOf(arguments))
+                : callStatement;
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        BinaryExpression condition = (BinaryExpression) fold(ifStatement.condition);
+        if (isConstant(condition)) {
+            Statistics.count(Statistics.Counter.FOLDED_BRANCHES);
+            statement = fold(evaluate(condition) ? ifStatement.thenPart : ifStatement.elsePart);
+            return;
+        }
+
+        Statement thenPart = fold(ifStatement.thenPart);
+        Statement elsePart = fold(ifStatement.elsePart);
+        statement = condition == ifStatement.condition && thenPart == ifStatement.thenPart && elsePart == ifStatement.elsePart
+                ? ifStatement
+                : new IfStatement(ifStatement.position, condition, thenPart, elsePart);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        BinaryExpression condition = (BinaryExpression) fold(whileStatement.condition);
+        if (isConstant(condition) && !evaluate(condition)) {
+            Statistics.count(Statistics.Counter.FOLDED_BRANCHES);
+            statement = new EmptyStatement(whileStatement.position);
+            return;
+        }
+
+        Statement body = fold(whileStatement.body);
+        statement = condition == whileStatement.condition && body == whileStatement.body
+                ? whileStatement
+                : new WhileStatement(whileStatement.position, condition, body);
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        List<Statement> statements = foldStatements(compoundStatement.statements);
+        statement = statements == compoundStatement.statements
+                ? compoundStatement
+                : new CompoundStatement(compoundStatement.position, statements);
+    }
+
+    @Override
+    public void visit(EmptyStatement emptyStatement) {
+        statement = emptyStatement;
+    }
+}
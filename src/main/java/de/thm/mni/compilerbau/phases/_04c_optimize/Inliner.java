@@ -0,0 +1,274 @@
+package de.thm.mni.compilerbau.phases._04c_optimize;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * This class is used to replace the calls of small procedures of the currently compiled SPL program by copies of their
+ * bodies, saving the stores of the arguments, the call and the frame of the called procedure.
+ * <p>
+ * A procedure is inlined if it is not recursive, neither directly nor through other procedures, and its body is at
+ * most {@link #MAX_SIZE} nodes large, counting the bodies of the procedures inlined into it. The recursive procedures
+ * are found as the strongly connected components of the call graph, which are sized bottom-up, so every procedure is
+ * sized after all procedures it calls.
+ * <p>
+ * A call outside of any loop is only inlined if the procedure contains no loop either. Such a call costs little
+ * compared to the loops of the procedure, while its variables would compete with the caller's ones for registers.
+ * <p>
+ * See {@link InliningVisitor} for how a single call is replaced.
+ */
+public class Inliner {
+    /**
+     * The largest number of statements, variables and expressions of a body copied to a call.
+     */
+    static final int MAX_SIZE = 128;
+
+    public Program inline(Program program, SymbolTable table) {
+        return inline(program, table, procedureDeclaration -> true);
+    }
+
+    /**
+     * Inlines the calls within the selected procedures only.
+     *
+     * @param isChanged Selects the procedures to inline calls into, the others are kept as they are.
+     * @return The program with all calls of small procedures inlined.
+     */
+    public Program inline(Program program, SymbolTable table, Predicate<ProcedureDeclaration> isChanged) {
+        CallGraph callGraph = new CallGraph(program);
+        if (callGraph.inlinable.isEmpty()) return program;
+
+        InliningVisitor visitor = new InliningVisitor(table, callGraph.inlinable, callGraph.looping);
+        List<GlobalDeclaration> declarations = new ArrayList<>(program.declarations.size());
+        boolean inlined = false;
+        for (GlobalDeclaration declaration : program.declarations) {
+            GlobalDeclaration result = declaration;
+            if (declaration instanceof ProcedureDeclaration && isChanged.test((ProcedureDeclaration) declaration)) {
+                result = visitor.inline((ProcedureDeclaration) declaration);
+            }
+            inlined |= result != declaration;
+            declarations.add(result);
+        }
+        return inlined ? new Program(program.position, List.copyOf(declarations)) : program;
+    }
+
+    /**
+     * @return The procedures, whose calls are inlined, by their names.
+     */
+    public static Map<Identifier, ProcedureDeclaration> inlinableProcedures(Program program) {
+        return new CallGraph(program).inlinable;
+    }
+
+    /**
+     * Finds the strongly connected components of the call graph with Tarjan's algorithm.
+     */
+    private static class CallGraph {
+        final Map<Identifier, ProcedureDeclaration> procedures = new HashMap<>();
+        final Map<Identifier, ProcedureDeclaration> inlinable = new HashMap<>();
+        /**
+         * The names of the procedures containing a loop.
+         */
+        final Set<Identifier> looping = new HashSet<>();
+
+        private final Map<ProcedureDeclaration, List<CallStatement>> calls = new HashMap<>();
+        private final Map<ProcedureDeclaration, Integer> sizes = new HashMap<>();
+        private final Map<ProcedureDeclaration, Integer> indices = new HashMap<>();
+        private final Map<ProcedureDeclaration, Integer> lowLinks = new HashMap<>();
+        private final Deque<ProcedureDeclaration> stack = new ArrayDeque<>();
+        private final Set<ProcedureDeclaration> onStack = new HashSet<>();
+
+        CallGraph(Program program) {
+            for (GlobalDeclaration declaration : program.declarations) {
+                if (declaration instanceof ProcedureDeclaration) {
+                    procedures.put(declaration.name, (ProcedureDeclaration) declaration);
+                }
+            }
+            for (ProcedureDeclaration procedure : procedures.values()) {
+                BodySize body = new BodySize();
+                procedure.body.forEach(statement -> statement.accept(body));
+                calls.put(procedure, body.calls);
+                if (body.loops > 0) looping.add(procedure.name);
+                sizes.put(procedure, body.size + procedure.variables.size());
+            }
+            for (ProcedureDeclaration procedure : procedures.values()) {
+                if (!indices.containsKey(procedure)) connect(procedure);
+            }
+        }
+
+        /**
+         * @return The declared procedures called by a procedure, not counting the predefined ones.
+         */
+        private List<ProcedureDeclaration> callees(ProcedureDeclaration procedure) {
+            List<ProcedureDeclaration> callees = new ArrayList<>();
+            for (CallStatement call : calls.get(procedure)) {
+                ProcedureDeclaration callee = procedures.get(call.procedureName);
+                if (callee != null) callees.add(callee);
+            }
+            return callees;
+        }
+
+        /**
+         * A procedure visited by {@link #connect(ProcedureDeclaration)}, whose callees are not all visited yet.
+         */
+        private static final class Frame {
+            final ProcedureDeclaration procedure;
+            final List<ProcedureDeclaration> callees;
+            int nextCallee = 0;
+
+            Frame(ProcedureDeclaration procedure, List<ProcedureDeclaration> callees) {
+                this.procedure = procedure;
+                this.callees = callees;
+            }
+        }
+
+        /**
+         * Visits all procedures reachable from the given one. The visited procedures are kept on an explicit stack
+         * instead of the call stack, since call chains may be thousands of procedures deep.
+         */
+        private void connect(ProcedureDeclaration root) {
+            Deque<Frame> frames = new ArrayDeque<>();
+            frames.push(enter(root));
+            while (!frames.isEmpty()) {
+                Frame frame = frames.peek();
+                if (frame.nextCallee < frame.callees.size()) {
+                    ProcedureDeclaration callee = frame.callees.get(frame.nextCallee++);
+                    if (!indices.containsKey(callee)) {
+                        frames.push(enter(callee));
+                    } else if (onStack.contains(callee)) {
+                        lowLinks.put(frame.procedure, Math.min(lowLinks.get(frame.procedure), indices.get(callee)));
+                    }
+                    continue;
+                }
+
+                frames.pop();
+                leave(frame);
+                Frame caller = frames.peek();
+                if (caller != null) {
+                    lowLinks.put(caller.procedure, Math.min(lowLinks.get(caller.procedure), lowLinks.get(frame.procedure)));
+                }
+            }
+        }
+
+        private Frame enter(ProcedureDeclaration procedure) {
+            int index = indices.size();
+            indices.put(procedure, index);
+            lowLinks.put(procedure, index);
+            stack.push(procedure);
+            onStack.add(procedure);
+            return new Frame(procedure, callees(procedure));
+        }
+
+        /**
+         * Completes the component of a procedure, once all its callees are visited.
+         */
+        private void leave(Frame frame) {
+            ProcedureDeclaration procedure = frame.procedure;
+            if (!lowLinks.get(procedure).equals(indices.get(procedure))) return;
+
+            // The procedure is the root of a component, all components called from it are complete
+            ProcedureDeclaration member;
+            int members = 0;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                members++;
+            } while (member != procedure);
+            if (members > 1 || frame.callees.contains(procedure)) return;
+
+            int size = sizes.get(procedure);
+            for (CallStatement call : calls.get(procedure)) {
+                ProcedureDeclaration callee = inlinable.get(call.procedureName);
+                if (callee != null) size += sizes.get(callee);
+            }
+            sizes.put(procedure, size);
+            if (size <= MAX_SIZE) inlinable.put(procedure.name, procedure);
+        }
+    }
+
+    /**
+     * Sizes a body by its statements, variables and expressions and collects its calls and loops. Unlike
+     * {@link de.thm.mni.compilerbau.absyn.visitor.NodeCounter}, compound and empty statements are not counted, since
+     * they generate no code.
+     */
+    private static class BodySize extends DoNothingVisitor {
+        final List<CallStatement> calls = new ArrayList<>();
+        int size = 0;
+        int loops = 0;
+
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            size++;
+        }
+
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            size++;
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            size++;
+        }
+
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            size++;
+            variableExpression.variable.accept(this);
+        }
+
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            size++;
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            size++;
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            size++;
+            calls.add(callStatement);
+            callStatement.argumentList.forEach(argument -> argument.accept(this));
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            size++;
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            size++;
+            loops++;
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package de.thm.mni.compilerbau.phases._04c_optimize;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.types.Type;
+import de.thm.mni.compilerbau.utils.Statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the calls of the given procedures within a procedure body by copies of their bodies.
+ * <p>
+ * A reference parameter becomes an alias of its argument, so calls are only inlined if every reference argument is a
+ * named variable. An array element passed as reference would have to be addressed before the body is executed.
+ * A value parameter becomes a new local variable of the calling procedure, assigned its argument in front of the body.
+ * It is replaced by its argument instead if the procedure never changes the parameter and the argument cannot change
+ * while the body is executed: a literal or a local variable of the caller, that is neither a reference nor passed as
+ * reference argument of the same call. The local variables of the procedure become new local variables of the caller.
+ * <p>
+ * The new variables are named after the inlined procedure and a number, which are no valid identifiers of SPL and
+ * cannot collide with the names of the caller. Calls within the copied body are inlined as well.
+ * <p>
+ * The procedures may be inlined after their semantic analysis has been skipped by the incremental compilation, so
+ * every copied node receives its data type from the table entries of the inlined procedure.
+ */
+class InliningVisitor extends DoNothingVisitor {
+    /**
+     * The names of the procedure copied at a single call.
+     */
+    private static final class Scope {
+        final SymbolTable localTable;
+        /**
+         * The names of the caller's variables representing the parameters and variables of the copied procedure.
+         */
+        final Map<Identifier, Identifier> names = new HashMap<>();
+        /**
+         * The arguments replacing the value parameters, which are never changed.
+         */
+        final Map<Identifier, Expression> values = new HashMap<>();
+
+        Scope(SymbolTable localTable) {
+            this.localTable = localTable;
+        }
+    }
+
+    private final SymbolTable table;
+    private final Map<Identifier, ProcedureDeclaration> inlinable;
+    private final Set<Identifier> looping;
+
+    private ProcedureEntry caller;
+    private List<VariableDeclaration> variables;
+    private int copies;
+    /**
+     * The procedure currently copied, or null while visiting the body of the caller itself.
+     */
+    private Scope scope;
+    private int loopDepth;
+
+    private Expression expression;
+    private Variable variable;
+    private Statement statement;
+
+    /**
+     * @param looping The procedures containing a loop, which are only inlined into loops.
+     */
+    InliningVisitor(SymbolTable table, Map<Identifier, ProcedureDeclaration> inlinable, Set<Identifier> looping) {
+        this.table = table;
+        this.inlinable = inlinable;
+        this.looping = looping;
+    }
+
+    ProcedureDeclaration inline(ProcedureDeclaration procedureDeclaration) {
+        caller = (ProcedureEntry) table.lookup(procedureDeclaration.name);
+        variables = new ArrayList<>(procedureDeclaration.variables);
+        copies = 0;
+        scope = null;
+        loopDepth = 0;
+        List<Statement> body = inlineStatements(procedureDeclaration.body);
+        if (body == procedureDeclaration.body) return procedureDeclaration;
+        return new ProcedureDeclaration(procedureDeclaration.position, procedureDeclaration.name,
+                procedureDeclaration.parameters, List.copyOf(variables), body);
+    }
+
+    private Expression inline(Expression expression) {
+        expression.accept(this);
+        return this.expression;
+    }
+
+    private Variable inline(Variable variable) {
+        variable.accept(this);
+        return this.variable;
+    }
+
+    private Statement inline(Statement statement) {
+        statement.accept(this);
+        return this.statement;
+    }
+
+    /**
+     * @return The same list if no statement was changed.
+     */
+    private List<Statement> inlineStatements(List<Statement> statements) {
+        List<Statement> inlined = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Statement statement : statements) {
+            Statement result = inline(statement);
+            changed |= result != statement;
+            inlined.add(result);
+        }
+        return changed ? List.copyOf(inlined) : statements;
+    }
+
+    /**
+     * Declares a new local variable of the caller for a parameter or variable of the copied procedure.
+     */
+    private Identifier declare(Identifier procedure, Identifier name, TypeExpression typeExpression, Type type) {
+        Identifier local = new Identifier(String.format("%s#%d.%s", procedure, copies, name));
+        caller.localTable.enter(new VariableEntry(local, type, false));
+        variables.add(new VariableDeclaration(typeExpression.position, local, typeExpression));
+        return local;
+    }
+
+    private static NamedVariable namedVariable(Position position, Identifier name, Type type) {
+        NamedVariable namedVariable = new NamedVariable(position, name);
+        namedVariable.dataType = type;
+        return namedVariable;
+    }
+
+    /**
+     * @return A copy of an argument replacing a value parameter, see {@link #isStable(Expression, Set)}.
+     */
+    private static Expression copyOf(Expression argument, Position position) {
+        Expression copy;
+        if (argument instanceof IntLiteral) {
+            copy = new IntLiteral(position, ((IntLiteral) argument).value);
+        } else {
+            NamedVariable named = (NamedVariable) ((VariableExpression) argument).variable;
+            copy = new VariableExpression(position, namedVariable(position, named.name, named.dataType));
+        }
+        copy.dataType = argument.dataType;
+        return copy;
+    }
+
+    /**
+     * @param aliased The variables passed as reference arguments of the call.
+     * @return true if the value of the argument cannot change while the body of the called procedure is executed.
+     */
+    private boolean isStable(Expression argument, Set<Identifier> aliased) {
+        if (argument instanceof IntLiteral) return true;
+        if (!(argument instanceof VariableExpression)) return false;
+        Variable variable = ((VariableExpression) argument).variable;
+        if (!(variable instanceof NamedVariable)) return false;
+        Identifier name = ((NamedVariable) variable).name;
+        return !((VariableEntry) caller.localTable.lookup(name)).isReference && !aliased.contains(name);
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        if (scope == null) {
+            variable = namedVariable;
+            return;
+        }
+        Type type = ((VariableEntry) scope.localTable.lookup(namedVariable.name)).type;
+        variable = namedVariable(namedVariable.position, scope.names.get(namedVariable.name), type);
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        if (scope == null) {
+            variable = arrayAccess;
+            return;
+        }
+        Variable array = inline(arrayAccess.array);
+        Expression index = inline(arrayAccess.index);
+        ArrayAccess copy = new ArrayAccess(arrayAccess.position, array, index);
+        copy.dataType = ((ArrayType) array.dataType).baseType;
+        variable = copy;
+    }
+
+    @Override
+    public void visit(IntLiteral intLiteral) {
+        if (scope == null) {
+            expression = intLiteral;
+            return;
+        }
+        IntLiteral copy = new IntLiteral(intLiteral.position, intLiteral.value);
+        copy.dataType = PrimitiveType.intType;
+        expression = copy;
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        if (scope == null) {
+            expression = variableExpression;
+            return;
+        }
+        if (variableExpression.variable instanceof NamedVariable) {
+            Expression value = scope.values.get(((NamedVariable) variableExpression.variable).name);
+            if (value != null) {
+                expression = copyOf(value, variableExpression.position);
+                return;
+            }
+        }
+        Variable variable = inline(variableExpression.variable);
+        VariableExpression copy = new VariableExpression(variableExpression.position, variable);
+        copy.dataType = variable.dataType;
+        expression = copy;
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        if (scope == null) {
+            expression = binaryExpression;
+            return;
+        }
+        BinaryExpression copy = new BinaryExpression(binaryExpression.position, binaryExpression.operator,
+                inline(binaryExpression.leftOperand), inline(binaryExpression.rightOperand));
+        copy.dataType = binaryExpression.operator.isArithmetic() ? PrimitiveType.intType : PrimitiveType.boolType;
+        expression = copy;
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        Variable target = inline(assignStatement.target);
+        Expression value = inline(assignStatement.value);
+        statement = target == assignStatement.target && value == assignStatement.value
+                ? assignStatement
+                : new AssignStatement(assignStatement.position, target, value);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        List<Expression> arguments = new ArrayList<>(callStatement.argumentList.size());
+        boolean changed = false;
+        for (Expression argument : callStatement.argumentList) {
+            Expression result = inline(argument);
+            changed |= result != argument;
+            arguments.add(result);
+        }
+
+        ProcedureDeclaration callee = inlinable.get(callStatement.procedureName);
+        if (loopDepth == 0 && looping.contains(callStatement.procedureName)) callee = null;
+        Set<Identifier> aliased = new HashSet<>();
+        for (int i = 0; callee != null && i < arguments.size(); i++) {
+            if (!callee.parameters.get(i).isReference) continue;
+            Variable argument = ((VariableExpression) arguments.get(i)).variable;
+            if (argument instanceof NamedVariable) {
+                aliased.add(((NamedVariable) argument).name);
+            } else {
+                callee = null;
+            }
+        }
+        if (callee == null) {
+            statement = changed
+                    ? new CallStatement(callStatement.position, callStatement.procedureName, List.copyOf(arguments))
+                    : callStatement;
+            return;
+        }
+
+        copies++;
+        Statistics.count(Statistics.Counter.INLINED_CALLS);
+        ProcedureEntry entry = (ProcedureEntry) table.lookup(callee.name);
+        Set<Identifier> written = Assignments.of(callee, table);
+        Scope inner = new Scope(entry.localTable);
+        List<Statement> statements = new ArrayList<>();
+        for (int i = 0; i < arguments.size(); i++) {
+            ParameterDeclaration parameter = callee.parameters.get(i);
+            Expression argument = arguments.get(i);
+            if (parameter.isReference) {
+                inner.names.put(parameter.name, ((NamedVariable) ((VariableExpression) argument).variable).name);
+            } else if (!written.contains(parameter.name) && isStable(argument, aliased)) {
+                inner.values.put(parameter.name, argument);
+            } else {
+                Type type = ((VariableEntry) entry.localTable.lookup(parameter.name)).type;
+                Identifier local = declare(callee.name, parameter.name, parameter.typeExpression, type);
+                inner.names.put(parameter.name, local);
+                statements.add(new AssignStatement(callStatement.position,
+                        namedVariable(callStatement.position, local, type), argument));
+            }
+        }
+        for (VariableDeclaration variable : callee.variables) {
+            Type type = ((VariableEntry) entry.localTable.lookup(variable.name)).type;
+            inner.names.put(variable.name, declare(callee.name, variable.name, variable.typeExpression, type));
+        }
+
+        Scope outer = scope;
+        scope = inner;
+        for (Statement statement : callee.body) statements.add(inline(statement));
+        scope = outer;
+        statement = new CompoundStatement(callStatement.position, List.copyOf(statements));
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        Expression condition = inline(ifStatement.condition);
+        Statement thenPart = inline(ifStatement.thenPart);
+        Statement elsePart = inline(ifStatement.elsePart);
+        statement = condition == ifStatement.condition && thenPart == ifStatement.thenPart
+                && elsePart == ifStatement.elsePart
+                ? ifStatement
+                : new IfStatement(ifStatement.position, condition, thenPart, elsePart);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        loopDepth++;
+        Expression condition = inline(whileStatement.condition);
+        Statement body = inline(whileStatement.body);
+        loopDepth--;
+        statement = condition == whileStatement.condition && body == whileStatement.body
+                ? whileStatement
+                : new WhileStatement(whileStatement.position, condition, body);
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        List<Statement> statements = inlineStatements(compoundStatement.statements);
+        statement = statements == compoundStatement.statements
+                ? compoundStatement
+                : new CompoundStatement(compoundStatement.position, statements);
+    }
+
+    @Override
+    public void visit(EmptyStatement emptyStatement) {
+        statement = emptyStatement;
+    }
+
+    /**
+     * Collects the names of the variables a procedure assigns or passes as reference argument.
+     */
+    private static class Assignments extends DoNothingVisitor {
+        private final SymbolTable table;
+        private final Set<Identifier> names = new HashSet<>();
+
+        private Assignments(SymbolTable table) {
+            this.table = table;
+        }
+
+        static Set<Identifier> of(ProcedureDeclaration procedureDeclaration, SymbolTable table) {
+            Assignments assignments = new Assignments(table);
+            procedureDeclaration.body.forEach(statement -> statement.accept(assignments));
+            return assignments.names;
+        }
+
+        private void add(Variable variable) {
+            if (variable instanceof NamedVariable) names.add(((NamedVariable) variable).name);
+        }
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            add(assignStatement.target);
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry callee = (ProcedureEntry) table.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.argumentList.size(); i++) {
+                if (callee.parameterTypes.get(i).isReference) {
+                    add(((VariableExpression) callStatement.argumentList.get(i)).variable);
+                }
+            }
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.body.accept(this);
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package de.thm.mni.compilerbau.phases._05_varalloc;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the most frequently used scalar variables of a procedure in the callee-saved registers $23 downwards, for the
+ * whole run of the procedure.
+ * <p>
+ * Candidates are local variables and value parameters of type int, that are never passed as reference argument.
+ * Every use of a candidate is weighted by its expected frequency: loops multiply it, the branches of an if-statement
+ * halve it. A candidate is only kept in a register if it is used
+ * more often than it costs to save and restore the register, plus loading the argument for a parameter. At most
+ * {@link #MAX_REGISTER_VARIABLES} candidates get a register, and only as many as leave enough registers for
+ * evaluating the most complex expression of the procedure without spilling.
+ * <p>
+ * All register variables live during the whole procedure, so any two of them interfere and need different registers.
+ */
+class RegisterAllocator extends DoNothingVisitor {
+    static final int LAST_REGISTER = 23;
+    static final int MAX_REGISTER_VARIABLES = 8;
+    /**
+     * Saving the register in the prolog and restoring it in the epilog costs two memory accesses.
+     */
+    private static final int SAVE_COST = 2;
+    /**
+     * The weight of a use outside of any loop or branch. Every enclosing loop multiplies it by {@link #LOOP_WEIGHT},
+     * up to {@link #MAX_WEIGHT}, every enclosing branch halves it.
+     */
+    private static final int USE_WEIGHT = 4;
+    private static final int LOOP_WEIGHT = 8;
+    private static final int MAX_WEIGHT = 1 << 15;
+
+    private final ProcedureEntry procedureEntry;
+    private final Map<VariableEntry, Integer> weights = new IdentityHashMap<>();
+    private final Set<VariableEntry> addressTaken = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final RegisterNeed registerNeed = new RegisterNeed();
+    private int maxNeed = 0;
+    private int weight = USE_WEIGHT;
+
+    RegisterAllocator(ProcedureEntry procedureEntry) {
+        this.procedureEntry = procedureEntry;
+    }
+
+    /**
+     * Sets the register of every variable and parameter of the procedure and the number of register variables.
+     */
+    void allocate(ProcedureDeclaration procedureDeclaration) {
+        for (Statement statement : procedureDeclaration.body) statement.accept(this);
+
+        List<VariableEntry> candidates = new ArrayList<>();
+        for (ParameterDeclaration parameter : procedureDeclaration.parameters) {
+            VariableEntry entry = lookup(parameter.name);
+            entry.register = 0;
+            if (isCandidate(entry, SAVE_COST + 1)) candidates.add(entry);
+        }
+        for (VariableDeclaration variable : procedureDeclaration.variables) {
+            VariableEntry entry = lookup(variable.name);
+            entry.register = 0;
+            if (isCandidate(entry, SAVE_COST)) candidates.add(entry);
+        }
+        // Stable, so equally weighted candidates keep their order of declaration
+        candidates.sort(Comparator.comparing((VariableEntry entry) -> weights.get(entry)).reversed());
+
+        int count = Math.min(candidates.size(),
+                Math.max(0, Math.min(MAX_REGISTER_VARIABLES, RegisterNeed.REGISTERS - maxNeed)));
+        for (int i = 0; i < count; i++) {
+            candidates.get(i).register = LAST_REGISTER - i;
+        }
+        procedureEntry.registerVariables = count;
+        Statistics.count(Statistics.Counter.REGISTER_VARIABLES, count);
+    }
+
+    private VariableEntry lookup(Identifier name) {
+        return (VariableEntry) procedureEntry.localTable.lookup(name);
+    }
+
+    private boolean isCandidate(VariableEntry entry, int cost) {
+        return entry.type == PrimitiveType.intType && !entry.isReference && !addressTaken.contains(entry)
+                && weights.getOrDefault(entry, 0) > cost * USE_WEIGHT;
+    }
+
+    private void visitStatement(Statement statement) {
+        maxNeed = Math.max(maxNeed, registerNeed.of(statement));
+    }
+
+    @Override
+    public void visit(NamedVariable namedVariable) {
+        weights.merge(lookup(namedVariable.name), weight, Integer::sum);
+    }
+
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        arrayAccess.array.accept(this);
+        arrayAccess.index.accept(this);
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        variableExpression.variable.accept(this);
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        binaryExpression.leftOperand.accept(this);
+        binaryExpression.rightOperand.accept(this);
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        visitStatement(assignStatement);
+        assignStatement.target.accept(this);
+        assignStatement.value.accept(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        visitStatement(callStatement);
+        ProcedureEntry callee = (ProcedureEntry) procedureEntry.localTable.lookup(callStatement.procedureName);
+        for (int i = 0; i < callStatement.argumentList.size(); i++) {
+            Expression argument = callStatement.argumentList.get(i);
+            if (callee.parameterTypes.get(i).isReference) {
+                Variable variable = ((VariableExpression) argument).variable;
+                if (variable instanceof NamedVariable) addressTaken.add(lookup(((NamedVariable) variable).name));
+            }
+            argument.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        visitStatement(ifStatement);
+        ifStatement.condition.accept(this);
+        int outer = weight;
+        weight = Math.max(1, weight / 2);
+        ifStatement.thenPart.accept(this);
+        ifStatement.elsePart.accept(this);
+        weight = outer;
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        visitStatement(whileStatement);
+        int outer = weight;
+        if (weight < MAX_WEIGHT) weight *= LOOP_WEIGHT;
+        whileStatement.condition.accept(this);
+        whileStatement.body.accept(this);
+        weight = outer;
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        for (Statement statement : compoundStatement.statements) statement.accept(this);
+    }
+}
@@ -0,0 +1,209 @@
+package de.thm.mni.compilerbau.phases._05_varalloc;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Computes the number of registers needed to evaluate expressions and variable addresses (Sethi–Ullman numbers), and
+ * the number of stack slots needed to spill registers, if there are not enough registers available.
+ * <p>
+ * Both operands of a binary expression, an array access or an assignment are evaluated one after another, the one
+ * needing more registers first. The value of the first operand occupies one register while the second one is
+ * evaluated. If the second operand needs more than the remaining registers, the value of the first one is spilled to
+ * a stack slot of the frame and loaded again once the second operand is evaluated. Spilling only ever happens if the
+ * second operand needs all available registers, so the spill slots form a stack as well.
+ * <p>
+ * The code generator evaluates all expressions exactly this way, so the variable allocator can reserve the spill
+ * slots in the frame.
+ * <p>
+ * A variable kept in a register (see {@link VariableEntry#register}) is read without occupying a register of its own,
+ * so it needs none at all. Those registers are no longer available for evaluating expressions.
+ */
+public class RegisterNeed {
+    /**
+     * The number of registers available for evaluating expressions: $8 to $23.
+     */
+    public static final int REGISTERS = 16;
+    /**
+     * The size of a spill slot, which holds a single register.
+     */
+    public static final int SLOT_BYTESIZE = 4;
+
+    private final Map<Node, Integer> needs = new IdentityHashMap<>();
+    private final SymbolTable localTable;
+    private final int registers;
+
+    /**
+     * Creates an instance for a procedure keeping all of its variables in the frame.
+     */
+    public RegisterNeed() {
+        this.localTable = null;
+        this.registers = REGISTERS;
+    }
+
+    /**
+     * Creates an instance for a procedure, whose register variables are already allocated.
+     */
+    public RegisterNeed(ProcedureEntry procedureEntry) {
+        this.localTable = procedureEntry.localTable;
+        this.registers = REGISTERS - procedureEntry.registerVariables;
+    }
+
+    /**
+     * @return The number of registers available for evaluating expressions, starting at $8.
+     */
+    public int registers() {
+        return registers;
+    }
+
+    /**
+     * @return The number of the register holding the variable, or 0 if the variable is kept in the frame.
+     */
+    public int registerOf(Variable variable) {
+        if (localTable == null || !(variable instanceof NamedVariable)) return 0;
+        return ((VariableEntry) localTable.lookup(((NamedVariable) variable).name)).register;
+    }
+
+    /**
+     * @return The number of the register holding the value of the expression, if it reads a variable kept in a
+     * register, or 0.
+     */
+    public int registerOf(Expression expression) {
+        return expression instanceof VariableExpression ? registerOf(((VariableExpression) expression).variable) : 0;
+    }
+
+    /**
+     * @return The number of registers needed to compute the value of the expression without spilling.
+     */
+    public int of(Expression expression) {
+        Integer need = needs.get(expression);
+        if (need != null) return need;
+
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            need = ofPair(of(binaryExpression.leftOperand), of(binaryExpression.rightOperand));
+        } else if (expression instanceof VariableExpression) {
+            Variable variable = ((VariableExpression) expression).variable;
+            need = registerOf(variable) != 0 ? 0 : of(variable);
+        } else {
+            need = 1;
+        }
+        needs.put(expression, need);
+        return need;
+    }
+
+    /**
+     * @return The number of registers needed to compute the address of the variable without spilling.
+     */
+    public int of(Variable variable) {
+        if (!(variable instanceof ArrayAccess)) return 1;
+
+        Integer need = needs.get(variable);
+        if (need == null) {
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            need = ofPair(of(arrayAccess.array), ofIndex(arrayAccess));
+            needs.put(variable, need);
+        }
+        return need;
+    }
+
+    /**
+     * @return The number of registers needed to compute the checked index of an array access. The bounds check needs
+     * a second register for the size of the array.
+     */
+    public int ofIndex(ArrayAccess arrayAccess) {
+        return Math.max(of(arrayAccess.index), 2);
+    }
+
+    private static int ofPair(int left, int right) {
+        return left == right ? left + 1 : Math.max(left, right);
+    }
+
+    /**
+     * @return true if the left operand of a pair is evaluated first.
+     */
+    public static boolean isLeftFirst(int left, int right) {
+        return left >= right;
+    }
+
+    /**
+     * @return The number of registers needed to execute the statement without spilling, not counting nested
+     * statements.
+     */
+    public int of(Statement statement) {
+        if (statement instanceof AssignStatement) {
+            AssignStatement assignStatement = (AssignStatement) statement;
+            if (registerOf(assignStatement.target) != 0) return of(assignStatement.value);
+            return ofPair(of(assignStatement.target), of(assignStatement.value));
+        } else if (statement instanceof CallStatement) {
+            int need = 0;
+            for (Expression argument : ((CallStatement) statement).argumentList) {
+                need = Math.max(need, of(argument));
+            }
+            return need;
+        } else if (statement instanceof IfStatement) {
+            return of(((IfStatement) statement).condition);
+        } else if (statement instanceof WhileStatement) {
+            return of(((WhileStatement) statement).condition);
+        }
+        return 0;
+    }
+
+    /**
+     * @return The number of spill slots needed to execute the statement, not counting nested statements.
+     */
+    public int spillSlots(Statement statement) {
+        if (statement instanceof AssignStatement) {
+            AssignStatement assignStatement = (AssignStatement) statement;
+            if (registerOf(assignStatement.target) != 0) return spills(assignStatement.value, registers);
+            return spillsOfPair(assignStatement.target, of(assignStatement.target),
+                    assignStatement.value, of(assignStatement.value), registers);
+        } else if (statement instanceof CallStatement) {
+            int slots = 0;
+            for (Expression argument : ((CallStatement) statement).argumentList) {
+                slots = Math.max(slots, spills(argument, registers));
+            }
+            return slots;
+        } else if (statement instanceof IfStatement) {
+            return spills(((IfStatement) statement).condition, registers);
+        } else if (statement instanceof WhileStatement) {
+            return spills(((WhileStatement) statement).condition, registers);
+        }
+        return 0;
+    }
+
+    /**
+     * @param available The number of registers available.
+     * @return The number of spill slots needed to evaluate the expression or variable address.
+     */
+    private int spills(Node node, int available) {
+        if (node instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) node;
+            return spillsOfPair(binaryExpression.leftOperand, of(binaryExpression.leftOperand),
+                    binaryExpression.rightOperand, of(binaryExpression.rightOperand), available);
+        } else if (node instanceof VariableExpression) {
+            return spills(((VariableExpression) node).variable, available);
+        } else if (node instanceof ArrayAccess) {
+            ArrayAccess arrayAccess = (ArrayAccess) node;
+            return spillsOfPair(arrayAccess.array, of(arrayAccess.array),
+                    arrayAccess.index, ofIndex(arrayAccess), available);
+        }
+        return 0;
+    }
+
+    private int spillsOfPair(Node left, int needLeft, Node right, int needRight, int available) {
+        boolean leftFirst = isLeftFirst(needLeft, needRight);
+        Node first = leftFirst ? left : right;
+        Node second = leftFirst ? right : left;
+        int needSecond = leftFirst ? needRight : needLeft;
+
+        int slots = spills(first, available);
+        if (needSecond < available) return slots;
+        return Math.max(slots, 1 + spills(second, available));
+    }
+}
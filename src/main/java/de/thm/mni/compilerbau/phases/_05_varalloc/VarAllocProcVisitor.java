@@ -5,9 +5,11 @@ import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
 import de.thm.mni.compilerbau.absyn.visitor.Visitable;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class VarAllocProcVisitor extends DoNothingVisitor {
 
@@ -15,15 +17,24 @@ public class VarAllocProcVisitor extends DoNothingVisitor {
     private SymbolTable symbolTable;
 
     private int maxCall;
+    private int maxSpill;
+    private RegisterNeed registerNeed;
+
+    private Predicate<ProcedureDeclaration> isChanged;
 
     public VarAllocProcVisitor(SymbolTable symbolTable) {
+        this(symbolTable, procedureDeclaration -> true);
+    }
+
+    public VarAllocProcVisitor(SymbolTable symbolTable, Predicate<ProcedureDeclaration> isChanged) {
         this.symbolTable = symbolTable;
+        this.isChanged = isChanged;
     }
 
     @Override
     public void visit(Program program) {
         for(Visitable visitable: program.declarations){
-            if(visitable instanceof ProcedureDeclaration){
+            if(visitable instanceof ProcedureDeclaration && isChanged.test((ProcedureDeclaration) visitable)){
                 visitable.accept(this);
             }
         }
@@ -34,16 +45,22 @@ public class VarAllocProcVisitor extends DoNothingVisitor {
             s.accept(this);
         }
     }
+    public void visit(AssignStatement statement){
+        maxSpill = Math.max(maxSpill,registerNeed.spillSlots(statement));
+    }
     public void visit(IfStatement statement){
+        maxSpill = Math.max(maxSpill,registerNeed.spillSlots(statement));
         statement.thenPart.accept(this);
         statement.elsePart.accept(this);
     }
     public void visit(WhileStatement statement){
+        maxSpill = Math.max(maxSpill,registerNeed.spillSlots(statement));
         statement.body.accept(this);
     }
     public void visit(CallStatement statement){
         ProcedureEntry procedureEntry= (ProcedureEntry) symbolTable.lookup(statement.procedureName);
         maxCall = Math.max(maxCall,procedureEntry.argumentAreaSize);
+        maxSpill = Math.max(maxSpill,registerNeed.spillSlots(statement));
     }
 
     @Override
@@ -52,11 +69,29 @@ public class VarAllocProcVisitor extends DoNothingVisitor {
         SymbolTable localTable = ((ProcedureEntry) symbolTable.lookup(procedureDeclaration.name)).localTable;
 
         maxCall = -1;
+        maxSpill = 0;
+        new RegisterAllocator(procedureEntry).allocate(procedureDeclaration);
+
+        // Only the variables left in memory get a place in the frame
+        var varOffset = 0;
+        for(VariableDeclaration variableDeclaration : procedureDeclaration.variables){
+            VariableEntry variableEntry = (VariableEntry) localTable.lookup(variableDeclaration.name);
+            if(variableEntry.register != 0){
+                variableEntry.offset = 0;
+                continue;
+            }
+            varOffset -=  variableEntry.type.byteSize;
+            variableEntry.offset = varOffset;
+        }
+        procedureEntry.localVarAreaSize = -varOffset;
+
+        registerNeed = new RegisterNeed(procedureEntry);
         for(Statement s : procedureDeclaration.body){
             s.accept(this);
         }
 
         procedureEntry.outgoingAreaSize = maxCall;
+        procedureEntry.spillAreaSize = maxSpill * RegisterNeed.SLOT_BYTESIZE;
 
 
 
@@ -8,6 +8,7 @@ import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
 import de.thm.mni.compilerbau.utils.NotImplemented;
 
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -26,8 +27,17 @@ public class VarAllocator {
     }
 
     public void allocVars(Program program, SymbolTable table) {
+        allocVars(program, table, procedureDeclaration -> true);
+    }
+
+    /**
+     * Allocates the variables of the selected procedures only.
+     *
+     * @param isChanged Selects the procedures to allocate, the others must already have their layout set.
+     */
+    public void allocVars(Program program, SymbolTable table, Predicate<ProcedureDeclaration> isChanged) {
 
-        VarAllocatorVisitor varAllocatorVisitor = new VarAllocatorVisitor(table);
+        VarAllocatorVisitor varAllocatorVisitor = new VarAllocatorVisitor(table, isChanged);
         program.accept(varAllocatorVisitor);
 
         if (showVarAlloc) System.out.println(formatVars(program, table));
@@ -44,15 +54,24 @@ public class VarAllocator {
         return program.declarations.stream().filter(dec -> dec instanceof ProcedureDeclaration).map(dec -> (ProcedureDeclaration) dec).map(procDec -> {
             ProcedureEntry entry = (ProcedureEntry) table.lookup(procDec.name);
 
-            return String.format("Variable allocation for procedure '%s'\n%s\nsize of argument area = %s\n%s%ssize of localvar area = %d\nsize of outgoing area = %d\n",
+            return String.format("Variable allocation for procedure '%s'\n%s\nsize of argument area = %s\n%s%ssize of localvar area = %d\nsize of outgoing area = %d\n%s",
                     procDec.name,
                     IntStream.range(0, entry.parameterTypes.size()).mapToObj(i -> String.format("arg %d: sp + %d", i, entry.parameterTypes.get(i).offset)).collect(Collectors.joining()),
                     entry.argumentAreaSize,
-                    procDec.parameters.stream().map(parDec -> String.format("param '%s': fp + %d\n", parDec.name, ((VariableEntry) entry.localTable.lookup(parDec.name)).offset)).collect(Collectors.joining()),
-                    procDec.variables.stream().map(varDec -> String.format("var '%s': fp - %d\n", varDec.name, -((VariableEntry) entry.localTable.lookup(varDec.name)).offset)).collect(Collectors.joining()),
+                    procDec.parameters.stream().map(parDec -> String.format("param '%s': %s\n", parDec.name, formatLocation((VariableEntry) entry.localTable.lookup(parDec.name)))).collect(Collectors.joining()),
+                    procDec.variables.stream().map(varDec -> String.format("var '%s': %s\n", varDec.name, formatLocation((VariableEntry) entry.localTable.lookup(varDec.name)))).collect(Collectors.joining()),
                     entry.localVarAreaSize,
-                    entry.outgoingAreaSize
+                    entry.outgoingAreaSize,
+                    entry.registerVariables > 0 ? String.format("register variables = %d\n", entry.registerVariables) : ""
             );
         }).collect(Collectors.joining("\n"));
     }
+
+    /**
+     * @return The register holding the variable, or its address relative to the frame pointer.
+     */
+    private static String formatLocation(VariableEntry entry) {
+        if (entry.register != 0) return "$" + entry.register;
+        return entry.offset < 0 ? String.format("fp - %d", -entry.offset) : String.format("fp + %d", entry.offset);
+    }
 }
@@ -2,7 +2,6 @@ package de.thm.mni.compilerbau.phases._05_varalloc;
 
 import de.thm.mni.compilerbau.absyn.ProcedureDeclaration;
 import de.thm.mni.compilerbau.absyn.Program;
-import de.thm.mni.compilerbau.absyn.VariableDeclaration;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
 import de.thm.mni.compilerbau.absyn.visitor.Visitable;
 import de.thm.mni.compilerbau.table.ParameterType;
@@ -10,15 +9,23 @@ import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
 
+import java.util.function.Predicate;
+
 public class VarAllocatorVisitor extends DoNothingVisitor {
 
     private SymbolTable symbolTable;
     private VarAllocProcVisitor varAllocProcVisitor;
+    private Predicate<ProcedureDeclaration> isChanged;
 
 
     public VarAllocatorVisitor(SymbolTable symbolTable) {
+        this(symbolTable, procedureDeclaration -> true);
+    }
+
+    public VarAllocatorVisitor(SymbolTable symbolTable, Predicate<ProcedureDeclaration> isChanged) {
         this.symbolTable = symbolTable;
-        varAllocProcVisitor = new VarAllocProcVisitor(symbolTable);
+        this.isChanged = isChanged;
+        varAllocProcVisitor = new VarAllocProcVisitor(symbolTable, isChanged);
     }
 
     @Override
@@ -26,7 +33,7 @@ public class VarAllocatorVisitor extends DoNothingVisitor {
 
 
         for(Visitable visitable: program.declarations){
-            if(visitable instanceof ProcedureDeclaration){
+            if(visitable instanceof ProcedureDeclaration && isChanged.test((ProcedureDeclaration) visitable)){
                 visitable.accept(this);
             }
         }
@@ -39,14 +46,7 @@ public class VarAllocatorVisitor extends DoNothingVisitor {
         ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(procedureDeclaration.name);
         SymbolTable localTable = ((ProcedureEntry) symbolTable.lookup(procedureDeclaration.name)).localTable;
 
-        var varOffset = 0;
-
-        for(VariableDeclaration variableDeclaration : procedureDeclaration.variables){
-            VariableEntry variableEntry = (VariableEntry) localTable.lookup(variableDeclaration.name);
-            varOffset -=  variableEntry.type.byteSize;
-            variableEntry.offset = varOffset;
-        }
-
+        // The local variables are placed by VarAllocProcVisitor, once it is known which of them are kept in registers
         var argOffset = 0;
         for(int i=0;i<procedureEntry.parameterTypes.size();i++){
             ParameterType parameterType = procedureEntry.parameterTypes.get(i);
@@ -59,7 +59,6 @@ public class VarAllocatorVisitor extends DoNothingVisitor {
 
 
         procedureEntry.argumentAreaSize = argOffset;
-        procedureEntry.localVarAreaSize = -varOffset;
 
 
     }
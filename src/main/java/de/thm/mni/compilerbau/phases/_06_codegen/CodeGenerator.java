@@ -2,6 +2,7 @@ package de.thm.mni.compilerbau.phases._06_codegen;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
@@ -9,16 +10,38 @@ import de.thm.mni.compilerbau.types.ArrayType;
 import de.thm.mni.compilerbau.utils.NotImplemented;
 
 import java.io.PrintWriter;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * This class is used to generate the assembly code for the compiled program.
- * This code is emitted via the {@link CodePrinter} in the output field of this class.
+ * The {@link CodeVisitor} generates the instructions of every procedure into an {@link InstructionList}, which is
+ * improved by the {@link Peephole} optimizer and the {@link StrengthReducer} and printed as assembler code by a
+ * {@link CodePrinter}.
  */
 public class CodeGenerator {
-    private final CodePrinter output;
-    
+    /**
+     * The expected length of a printed instruction, used to size the buffer of a procedure.
+     */
+    private static final int INSTRUCTION_CHARS = 24;
+
+    private final StringBuilder prolog = new StringBuilder();
+    private final CodePrinter output = new CodePrinter(prolog);
+    private final CodeWriter writer;
+
     public CodeGenerator(PrintWriter output) {
-        this.output = new CodePrinter(output);
+        this.writer = new CodeWriter(output);
+    }
+
+    /**
+     * Creates a code generator writing the code to a channel, e.g. a {@link java.nio.channels.FileChannel}.
+     * The code is written in large blocks.
+     */
+    public CodeGenerator(WritableByteChannel output) {
+        this.writer = new CodeWriter(output);
     }
 
     /**
@@ -44,8 +67,49 @@ public class CodeGenerator {
     }
 
     public void generateCode(Program program, SymbolTable table) {
+        generateCode(program, table, Map.of());
+    }
+
+    /**
+     * Generates the code of the program, reusing the code previously generated for unchanged procedures.
+     *
+     * @param cachedCode The code of the unchanged procedures by their names.
+     * @return The code of every procedure by its name, in declaration order.
+     */
+    public Map<Identifier, String> generateCode(Program program, SymbolTable table, Map<Identifier, String> cachedCode) {
         assemblerProlog();
-        program.accept(new CodeVisitor(output,table,0));
+        // Every procedure is generated concurrently into a buffer of its own. The buffers are emitted in declaration
+        // order, so the generated code is the same regardless of the number of threads.
+        List<ProcedureDeclaration> procedures = program.declarations.stream()
+                .filter(declaration -> declaration instanceof ProcedureDeclaration)
+                .map(declaration -> (ProcedureDeclaration) declaration)
+                .collect(Collectors.toList());
+        List<String> code = procedures.parallelStream()
+                .map(procedure -> cachedCode.containsKey(procedure.name)
+                        ? cachedCode.get(procedure.name)
+                        : generateProcedure(procedure, table))
+                .collect(Collectors.toList());
 
+        writer.write(prolog);
+        Map<Identifier, String> procedureCode = new LinkedHashMap<>();
+        for (int i = 0; i < procedures.size(); i++) {
+            writer.write(code.get(i));
+            procedureCode.put(procedures.get(i).name, code.get(i));
+        }
+        writer.flush();
+        return procedureCode;
+    }
+
+    /**
+     * @return The assembly code of a single procedure.
+     */
+    private static String generateProcedure(ProcedureDeclaration procedureDeclaration, SymbolTable table) {
+        InstructionList code = new InstructionList(procedureDeclaration.name.toString());
+        procedureDeclaration.accept(new CodeVisitor(code, table));
+        Peephole.optimize(code);
+        code = StrengthReducer.reduce(code);
+        StringBuilder buffer = new StringBuilder(code.size() * INSTRUCTION_CHARS);
+        new CodePrinter(buffer).print(code);
+        return buffer.toString();
     }
 }
@@ -1,68 +1,85 @@
 package de.thm.mni.compilerbau.phases._06_codegen;
 
-import java.io.PrintWriter;
-
+import de.thm.mni.compilerbau.utils.Statistics;
+
+/**
+ * Appends assembler code to a buffer.
+ * <p>
+ * The instructions of a procedure are printed from their {@link InstructionList}. Opcodes, register names and
+ * immediate values are appended one by one, so printing an instruction neither formats nor allocates strings.
+ */
 class CodePrinter {
-    private final PrintWriter outputFile;
-
-    CodePrinter(PrintWriter outputFile) {
-        this.outputFile = outputFile;
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, Register r3) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, r3);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, int value) {
-        outputFile.printf("\t%s\t%s,%s,%d\n", opcode, r1, r2, value);
-    }
+    private final StringBuilder output;
 
-    void emitInstruction(String opcode, Register r1, Register r2, String label) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, label);
+    CodePrinter(StringBuilder output) {
+        this.output = output;
     }
 
-    void emitInstruction(String opcode, Register r1) {
-        outputFile.printf("\t%s\t%s\n", opcode, r1);
+    /**
+     * Prints the instructions of a procedure, preceded by the export of its name.
+     */
+    void print(InstructionList code) {
+        String name = code.procedureName;
+        emit(".export " + name);
+        emitLabel(name);
+        for (int i = 0; i < code.size(); i++) {
+            Opcode opcode = code.opcode(i);
+            switch (opcode.format) {
+                case LABEL:
+                    label(code, code.first(i)).append(":\n");
+                    continue;
+                case ONE:
+                    opcode(opcode);
+                    operand(code, code.kind(i), code.first(i)).append('\n');
+                    break;
+                case THREE:
+                    opcode(opcode).append(Register.of(code.first(i)).name)
+                            .append(',').append(Register.of(code.second(i)).name).append(',');
+                    operand(code, code.kind(i), code.third(i)).append('\n');
+                    break;
+            }
+        }
     }
 
-    void emitInstruction(String opcode, String label) {
-        outputFile.printf("\t%s\t%s\n", opcode, label);
+    private StringBuilder opcode(Opcode opcode) {
+        Statistics.count(Statistics.Counter.INSTRUCTIONS);
+        return output.append('\t').append(opcode.mnemonic).append('\t');
     }
 
-    void emitInstruction(String opcode, Register r1, Register r2, Register r3, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, r3, comment);
+    private StringBuilder operand(InstructionList code, byte kind, int value) {
+        switch (kind) {
+            case InstructionList.REGISTER:
+                return output.append(Register.of(value).name);
+            case InstructionList.LABEL:
+                return label(code, value);
+            case InstructionList.SYMBOL:
+                return output.append(code.symbol(value));
+            default:
+                return output.append(value);
+        }
     }
 
-    void emitInstruction(String opcode, Register r1, Register r2, int value, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%d\t\t; %s\n", opcode, r1, r2, value, comment);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, String label, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, label, comment);
-    }
-
-    void emitInstruction(String opcode, Register r1, String comment) {
-        outputFile.printf("\t%s\t%s\t\t\t; %s\n", opcode, r1, comment);
-    }
-
-    void emitInstruction(String opcode, String label, String comment) {
-        outputFile.printf("\t%s\t%s\t\t; %s\n", opcode, label, comment);
+    /**
+     * Labels are local to their procedure and named like 'name.L0'. SPL identifiers never contain a dot, so a label
+     * can't collide with the name of a procedure.
+     */
+    private StringBuilder label(InstructionList code, int label) {
+        return output.append(code.procedureName).append(".L").append(label);
     }
 
     void emitLabel(String label) {
-        outputFile.printf("%s:\n", label);
+        output.append(label).append(":\n");
     }
 
     void emitImport(String label) {
-        outputFile.printf("\t.import\t%s\n", label);
+        output.append("\t.import\t").append(label).append('\n');
     }
 
     void emitExport(String label) {
-        outputFile.printf("\t.export\t%s\n", label);
+        output.append("\t.export\t").append(label).append('\n');
     }
 
     void emit(String str) {
-        outputFile.println(str);
+        output.append(str).append('\n');
     }
 }
-
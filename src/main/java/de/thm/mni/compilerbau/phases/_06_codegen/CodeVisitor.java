@@ -2,26 +2,90 @@ package de.thm.mni.compilerbau.phases._06_codegen;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.phases._05_varalloc.RegisterNeed;
 import de.thm.mni.compilerbau.table.Entry;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
 import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.utils.ProcedureEvent;
+import de.thm.mni.compilerbau.utils.Statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class CodeVisitor extends DoNothingVisitor {
 
-    private final CodePrinter output;
+    private static final Register ZERO = Register.of(0);
+    private static final Register FRAME_POINTER = Register.of(25);
+    private static final Register STACK_POINTER = Register.of(29);
+    private static final Register RETURN_ADDRESS = Register.of(31);
+    private static final int REGISTER_SLOT_BYTESIZE = 4;
+
+    private final InstructionList code;
     private SymbolTable symbolTable;
 
     private Register register;
 
-    private int labelCounter;
+    /**
+     * Operands are evaluated in the order given by their Sethi–Ullman numbers, see {@link RegisterNeed}.
+     */
+    private final RegisterNeed registerNeed;
+    /**
+     * The last register available for evaluating expressions. The registers above hold variables and the addresses
+     * hoisted out of the enclosing loops.
+     */
+    private Register lastRegister;
+    /**
+     * The array accesses, whose index is known to be in bounds, see {@link RangeAnalysis}.
+     */
+    private final Set<ArrayAccess> accessesInBounds;
+    /**
+     * The registers holding the addresses computed before the enclosing loops, by {@link LoopInvariants#key(Variable)}.
+     */
+    private final LoopInvariants loopInvariants;
+    private final Map<String, Register> invariants = new HashMap<>();
+    /**
+     * The offset of the spill area from the frame pointer and the number of spill slots currently used.
+     */
+    private final int spillOffset;
+    private int spillDepth = 0;
+    /**
+     * The calls turned into jumps, see {@link TailCalls}. A recursive one jumps to the body label, behind the prolog.
+     * The epilog is inserted in front of every jump to another procedure, once the saved registers are known.
+     */
+    private final TailCalls tailCalls;
+    private final int bodyLabel;
+    private final List<Integer> tailJumps = new ArrayList<>();
+    /**
+     * The end of the code right after the last jump of a tail call, which is never continued.
+     */
+    private int tailCallEnd = -1;
 
-    public CodeVisitor(CodePrinter output, SymbolTable symbolTable,int labelCounter) {
-        this.output = output;
+    /**
+     * @param code The list the instructions of the visited procedures are added to. Its labels are local to a single
+     *             procedure, so every procedure needs a list of its own.
+     */
+    public CodeVisitor(InstructionList code, SymbolTable symbolTable) {
+        this(code, symbolTable, new RegisterNeed(), Set.of(), 0, TailCalls.NONE);
+    }
+
+    private CodeVisitor(InstructionList code, SymbolTable symbolTable, RegisterNeed registerNeed,
+                        Set<ArrayAccess> accessesInBounds, int spillOffset, TailCalls tailCalls) {
+        this.code = code;
         this.symbolTable = symbolTable;
-        this.labelCounter = labelCounter;
-        register = new Register(7);
+        this.registerNeed = registerNeed;
+        this.accessesInBounds = accessesInBounds;
+        this.lastRegister = Register.of(7 + registerNeed.registers());
+        this.loopInvariants = new LoopInvariants(symbolTable, registerNeed, accessesInBounds);
+        this.spillOffset = spillOffset;
+        this.tailCalls = tailCalls;
+        this.bodyLabel = tailCalls.isRecursive() ? code.newLabel() : -1;
+        register = Register.of(7);
     }
 
 
@@ -35,45 +99,121 @@ public class CodeVisitor extends DoNothingVisitor {
 
     @Override
     public void visit(ProcedureDeclaration procedureDeclaration) {
+        ProcedureEvent event = new ProcedureEvent("codegen");
+        int firstInstruction = code.instructionCount();
 
-        output.emit(".export "+procedureDeclaration.name);
-        output.emitLabel(procedureDeclaration.name.toString());
         ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(procedureDeclaration.name);
         boolean hasCall = procedureEntry.outgoingAreaSize >= 0;
 
-        int frameSize = hasCall
-                ? procedureEntry.localVarAreaSize + procedureEntry.outgoingAreaSize +8
-                : procedureEntry.localVarAreaSize +4;
-        int returnOffset = -(procedureEntry.localVarAreaSize +8);
-        int framePointerOffset = hasCall
-                ? procedureEntry.outgoingAreaSize +4
-                : 0;
-        instruction("sub","$29","$29",String.valueOf(frameSize));
-        instruction("stw","$25","$29",String.valueOf(framePointerOffset));
-        instruction("add","$25","$29",String.valueOf(frameSize));
-        if(hasCall) instruction("stw","$31","$25",String.valueOf(returnOffset));
         //BODY
-        CodeVisitor codeVisitor = new CodeVisitor(output,procedureEntry.localTable,this.labelCounter);
+        // The prolog is inserted afterwards, when the callee-saved registers written by the body are known
+        int prolog = code.size();
+        RegisterNeed registerNeed = new RegisterNeed(procedureEntry);
+        TailCalls tailCalls = TailCalls.of(procedureDeclaration,procedureEntry,registerNeed);
+        CodeVisitor codeVisitor = new CodeVisitor(code,procedureEntry.localTable,registerNeed,
+                RangeAnalysis.accessesInBounds(procedureDeclaration,procedureEntry),-procedureEntry.localVarAreaSize,
+                tailCalls);
+        if(tailCalls.isRecursive()) code.addLabel(codeVisitor.bodyLabel);
         for(Statement statement :procedureDeclaration.body){
 
             statement.accept(codeVisitor);
         }
-        this.labelCounter = codeVisitor.labelCounter;
-        if(hasCall) instruction("ldw","$31","$25",String.valueOf(returnOffset));
-        instruction("ldw","$25","$29",String.valueOf(framePointerOffset));
-        instruction("add","$29","$29",String.valueOf(frameSize));
+        // The epilog is not reached, if the body ends with the jump of a tail call
+        boolean returns = code.size() != codeVisitor.tailCallEnd;
+        int saved = 0;
+        for(int i=prolog;i<code.size();i++){
+            saved |= Liveness.defines(code,i) & Liveness.CALLEE_SAVED;
+        }
+        // Parameters are loaded into their registers by the prolog
+        for(ParameterDeclaration parameter:procedureDeclaration.parameters){
+            saved |= Liveness.bit(((VariableEntry) procedureEntry.localTable.lookup(parameter.name)).register);
+        }
 
-        instruction("jr","$31");
+        // The spill area lies directly below the local variables, followed by the saved registers
+        int saveOffset = -(procedureEntry.localVarAreaSize + procedureEntry.spillAreaSize);
+        int localAreaSize = -saveOffset + Integer.bitCount(saved) * REGISTER_SLOT_BYTESIZE;
+        // A procedure without calls addresses its frame from the stack pointer and keeps the caller's frame pointer
+        int frameSize = hasCall
+                ? localAreaSize + procedureEntry.outgoingAreaSize +8
+                : localAreaSize;
+        int returnOffset = -(localAreaSize +8);
+        int framePointerOffset = procedureEntry.outgoingAreaSize +4;
+        if(!codeVisitor.tailJumps.isEmpty()){
+            InstructionList exit = new InstructionList(code.procedureName);
+            saveRegisters(exit,Opcode.LDW,saved,saveOffset);
+            exit.add(Opcode.LDW,RETURN_ADDRESS,FRAME_POINTER,returnOffset);
+            exit.add(Opcode.LDW,FRAME_POINTER,STACK_POINTER,framePointerOffset);
+            exit.add(Opcode.ADD,STACK_POINTER,STACK_POINTER,frameSize);
+            code.insert(codeVisitor.tailJumps.stream().mapToInt(Integer::intValue).toArray(),exit);
+        }
+
+        InstructionList entry = new InstructionList(code.procedureName);
+        if(frameSize > 0) entry.add(Opcode.SUB,STACK_POINTER,STACK_POINTER,frameSize);
+        if(hasCall){
+            entry.add(Opcode.STW,FRAME_POINTER,STACK_POINTER,framePointerOffset);
+            entry.add(Opcode.ADD,FRAME_POINTER,STACK_POINTER,frameSize);
+            entry.add(Opcode.STW,RETURN_ADDRESS,FRAME_POINTER,returnOffset);
+        }
+        saveRegisters(entry,Opcode.STW,saved,saveOffset);
+        for(ParameterDeclaration parameter:procedureDeclaration.parameters){
+            VariableEntry variableEntry = (VariableEntry) procedureEntry.localTable.lookup(parameter.name);
+            if(variableEntry.register != 0){
+                entry.add(Opcode.LDW,Register.of(variableEntry.register),FRAME_POINTER,variableEntry.offset);
+            }
+        }
+        code.insert(prolog,entry);
+
+        if(returns){
+            saveRegisters(code,Opcode.LDW,saved,saveOffset);
+            if(hasCall){
+                code.add(Opcode.LDW,RETURN_ADDRESS,FRAME_POINTER,returnOffset);
+                code.add(Opcode.LDW,FRAME_POINTER,STACK_POINTER,framePointerOffset);
+            }else{
+                addressFromStackPointer(code,prolog,frameSize);
+            }
+            if(frameSize > 0) code.add(Opcode.ADD,STACK_POINTER,STACK_POINTER,frameSize);
+            code.addReturn(RETURN_ADDRESS);
+        }
 
+        event.finish(procedureDeclaration, code.instructionCount() - firstInstruction);
 
     }
 
+    /**
+     * Rewrites all addresses relative to the frame pointer into addresses relative to the stack pointer. The frame
+     * pointer would point right above the frame.
+     */
+    private static void addressFromStackPointer(InstructionList code, int from, int frameSize){
+        for(int i=from;i<code.size();i++){
+            if(code.second(i) == FRAME_POINTER.number && code.kind(i) == InstructionList.IMMEDIATE){
+                code.set(i,code.opcode(i),code.first(i),STACK_POINTER.number,code.third(i)+frameSize,
+                        InstructionList.IMMEDIATE);
+            }
+        }
+    }
+
+    /**
+     * Saves or restores callee-saved registers in slots of the frame.
+     *
+     * @param registers The registers as bit mask, see {@link Liveness}.
+     * @param offset    The offset of the slots from the frame pointer. The slots lie below it in ascending order of the
+     *                  registers.
+     */
+    private static void saveRegisters(InstructionList code, Opcode opcode, int registers, int offset){
+        for(int number=16;number<=23;number++){
+            if((registers & Liveness.bit(number)) != 0){
+                offset -= REGISTER_SLOT_BYTESIZE;
+                code.add(opcode,Register.of(number),FRAME_POINTER,offset);
+            }
+        }
+    }
+
 
     @Override
     public void visit(IfStatement ifStatement) {
-        String elseLabel = "L"+(labelCounter++);
-        String endLabel = !(ifStatement.elsePart instanceof EmptyStatement)
-                ? "L"+(labelCounter++)
+        int elseLabel = code.newLabel();
+        int endLabel = !(ifStatement.elsePart instanceof EmptyStatement)
+                ? code.newLabel()
                 : elseLabel;
         BinaryExpression binaryExpression = (BinaryExpression) ifStatement.condition;
 
@@ -82,74 +222,149 @@ public class CodeVisitor extends DoNothingVisitor {
         ifStatement.thenPart.accept(this);
 
         if(!(ifStatement.elsePart instanceof EmptyStatement)){
-            instruction("j",endLabel);
-            output.emitLabel(elseLabel);
+            if(code.size() != tailCallEnd) code.addJump(endLabel);
+            code.addLabel(elseLabel);
             ifStatement.elsePart.accept(this);
         }
-        output.emitLabel(endLabel);
+        code.addLabel(endLabel);
 
 
     }
 
     public void visit(CallStatement callStatement){
         ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(callStatement.procedureName);
+        if(tailCalls.contains(callStatement)){
+            tailCall(callStatement,procedureEntry);
+            return;
+        }
         for(int i=0;i<procedureEntry.parameterTypes.size();i++){
+            Register base = register;
+            Register argument;
             if(procedureEntry.parameterTypes.get(i).isReference){
                 ((VariableExpression)callStatement.argumentList.get(i)).variable.accept(this);
+                argument = register;
             }else {
-                callStatement.argumentList.get(i).accept(this);
+                argument = operand(callStatement.argumentList.get(i));
             }
 
-            instruction("stw",register.toString(),"$29","0");
-            register = register.previous(1);
+            code.add(Opcode.STW,argument,STACK_POINTER,procedureEntry.parameterTypes.get(i).offset);
+            register = base;
         }
 
-        instruction("jal",callStatement.procedureName.toString());
+        code.addCall(callStatement.procedureName.toString());
+    }
+
+    /**
+     * Computes all arguments onto the register stack before storing any of them in place of the parameters of this
+     * procedure, since they may still be read.
+     */
+    private void tailCall(CallStatement callStatement, ProcedureEntry procedureEntry){
+        Register base = register;
+        for(int i=0;i<procedureEntry.parameterTypes.size();i++){
+            Expression argument = callStatement.argumentList.get(i);
+            if(procedureEntry.parameterTypes.get(i).isReference){
+                ((VariableExpression) argument).variable.accept(this);
+            }else{
+                argument.accept(this);
+            }
+        }
+
+        boolean recursive = procedureEntry == tailCalls.procedureEntry;
+        for(int i=0;i<procedureEntry.parameterTypes.size();i++){
+            Register argument = base.next(i+1);
+            VariableEntry parameter = recursive ? tailCalls.parameters.get(i) : null;
+            if(recursive && parameter.register != 0){
+                code.add(Opcode.ADD,Register.of(parameter.register),argument,ZERO);
+            }else{
+                code.add(Opcode.STW,argument,FRAME_POINTER,procedureEntry.parameterTypes.get(i).offset);
+            }
+        }
+        register = base;
+
+        if(recursive){
+            code.addJump(bodyLabel);
+        }else{
+            tailJumps.add(code.size());
+            code.addJump(callStatement.procedureName.toString());
+        }
+        tailCallEnd = code.size();
+        Statistics.count(Statistics.Counter.TAIL_CALLS);
     }
 
     public void visit(WhileStatement whileStatement){
-        String condLabel = "L"+(labelCounter++);
-        String endLabel = "L"+(labelCounter++);
-        output.emitLabel(condLabel);
+        // The pre-header computes the invariant addresses into the registers the loop does not need
+        Register outerLastRegister = lastRegister;
+        List<String> hoisted = new ArrayList<>();
+        LoopInvariants.Loop loop = loopInvariants.analyze(whileStatement);
+        for(Variable invariant:loop.invariants){
+            if(lastRegister.number - register.number <= loop.registerNeed) break;
+            // A call must not overwrite the address
+            if(loop.hasCall && (Liveness.bit(lastRegister.number) & Liveness.CALLEE_SAVED) == 0) break;
+            String key = LoopInvariants.key(invariant);
+            if(invariants.containsKey(key)) continue;
+
+            Register base = register;
+            Register address = address(invariant);
+            code.add(Opcode.ADD,lastRegister,address,ZERO);
+            register = base;
+            invariants.put(key,lastRegister);
+            hoisted.add(key);
+            lastRegister = lastRegister.previous(1);
+            Statistics.count(Statistics.Counter.INVARIANTS_HOISTED);
+        }
+
+        int condLabel = code.newLabel();
+        int endLabel = code.newLabel();
+        code.addLabel(condLabel);
 
         BinaryExpression binaryExpression = (BinaryExpression) whileStatement.condition;
         generateCondition(binaryExpression,endLabel);
 
         whileStatement.body.accept(this);
-        instruction("j",condLabel);
-        output.emitLabel(endLabel);
+        code.addJump(condLabel);
+        code.addLabel(endLabel);
 
+        for(String key:hoisted) invariants.remove(key);
+        lastRegister = outerLastRegister;
     }
 
-    public void generateCondition(BinaryExpression binaryExpression,String label){
-        binaryExpression.leftOperand.accept(this);
-        binaryExpression.rightOperand.accept(this);
-        String mnemonic="";
+    public void generateCondition(BinaryExpression binaryExpression,int label){
+        // A comparison of two literals is always true or always false, see ConstantFolder
+        if(binaryExpression.leftOperand instanceof IntLiteral && binaryExpression.rightOperand instanceof IntLiteral){
+            if(!binaryExpression.operator.compare(((IntLiteral) binaryExpression.leftOperand).value,
+                    ((IntLiteral) binaryExpression.rightOperand).value)){
+                code.addJump(label);
+            }
+            return;
+        }
+        Register base = register;
+        Register[] operands = evaluateOperands(binaryExpression);
+        Opcode opcode = null;
         switch (binaryExpression.operator.flipComparison()){
             case EQU:
-                mnemonic = "beq";
+                opcode = Opcode.BEQ;
                 break;
             case NEQ:
-                mnemonic = "bne";
+                opcode = Opcode.BNE;
                 break;
             case LST:
-                mnemonic = "blt";
+                opcode = Opcode.BLT;
                 break;
             case LSE:
-                mnemonic = "ble";
+                opcode = Opcode.BLE;
                 break;
             case GRT:
-                mnemonic = "bgt";
+                opcode = Opcode.BGT;
                 break;
             case GRE:
-                mnemonic = "bge";
+                opcode = Opcode.BGE;
                 break;
         }
 
 
-        instruction(mnemonic,register.previous(1).toString(),register.toString(),label);
+        code.addBranch(opcode,operands[0],operands[1],label);
 
-        register = register.previous(2);
+        register = base;
     }
 
     public void visit(CompoundStatement compoundStatement){
@@ -159,87 +374,173 @@ public class CodeVisitor extends DoNothingVisitor {
     }
 
     public void visit(ArrayAccess arrayAccess){
-        int arraySize = ((ArrayType) arrayAccess.array.dataType).arraySize;
-
-        arrayAccess.array.accept(this);
-
-        arrayAccess.index.accept(this);
-
-        instruction("add",register.next(1).toString(),"$0",String.valueOf(arraySize));
-        instruction("bgeu", register.toString(),register.next(1).toString(),"_indexError");
-        instruction("mul",register.toString(),register.toString(),String.valueOf(((ArrayType) arrayAccess.array.dataType).baseType.byteSize));
-
-        register = register.previous(1);
-        instruction("add",register.toString(),register.toString(),register.next(1).toString());
+        ArrayType arrayType = (ArrayType) arrayAccess.array.dataType;
+
+        Register base = register;
+        Register[] operands = evaluatePair(registerNeed.of(arrayAccess.array), () -> address(arrayAccess.array),
+                registerNeed.ofIndex(arrayAccess), () -> {
+                    Register index = operand(arrayAccess.index);
+                    if(index != register) push();
+                    if(accessesInBounds.contains(arrayAccess)){
+                        Statistics.count(Statistics.Counter.BOUNDS_CHECKS_REMOVED);
+                    }else{
+                        code.add(Opcode.ADD,register.next(1),ZERO,arrayType.arraySize);
+                        code.addBranch(Opcode.BGEU,index,register.next(1),"_indexError");
+                    }
+                    code.add(Opcode.MUL,register,index,arrayType.baseType.byteSize);
+                    return register;
+                });
+
+        register = base;
+        push();
+        code.add(Opcode.ADD,register,operands[0],operands[1]);
 
     }
 
     @Override
     public void visit(IntLiteral intLiteral) {
-        register = register.next(1);
-        instruction("add",register.toString(), "$0",String.valueOf(intLiteral.value));
+        push();
+        code.add(Opcode.ADD,register,ZERO,intLiteral.value);
 
     }
 
     @Override
     public void visit(BinaryExpression binaryExpression) {
-        binaryExpression.leftOperand.accept(this);
-
-        binaryExpression.rightOperand.accept(this);
+        Register base = register;
+        Register[] operands = evaluateOperands(binaryExpression);
+        Register left = operands[0];
+        Register right = operands[1];
 
         if(binaryExpression.operator.isArithmetic()){
+            register = base;
+            push();
             switch (binaryExpression.operator){
                 case ADD:
-                    instruction("add",register.previous(1).toString(),register.previous(1).toString(),register.toString());
+                    code.add(Opcode.ADD,register,left,right);
                     break;
                 case SUB:
-                    instruction("sub",register.previous(1).toString(),register.previous(1).toString(),register.toString());
+                    code.add(Opcode.SUB,register,left,right);
                     break;
                 case MUL:
-                    instruction("mul",register.previous(1).toString(),register.previous(1).toString(),register.toString());
+                    code.add(Opcode.MUL,register,left,right);
                     break;
                 case DIV:
-                    instruction("div",register.previous(1).toString(),register.previous(1).toString(),register.toString());
+                    code.add(Opcode.DIV,register,left,right);
                     break;
             }
-            register = register.previous(1);
         }
 
     }
 
     public void visit(NamedVariable namedVariable){
-        register = register.next(1);
+        push();
         VariableEntry variableEntry = (VariableEntry) symbolTable.lookup(namedVariable.name);
-        instruction("add",register.toString(),"$25",String.valueOf(variableEntry.offset));
+        code.add(Opcode.ADD,register,FRAME_POINTER,variableEntry.offset);
         if(variableEntry.isReference){
-            instruction("ldw",register.toString(),register.toString(),"0");
+            code.add(Opcode.LDW,register,register,0);
         }
     }
 
     public void visit(VariableExpression variableExpression){
+        int variable = registerNeed.registerOf(variableExpression.variable);
+        if(variable != 0){
+            push();
+            code.add(Opcode.ADD,register,Register.of(variable),ZERO);
+            return;
+        }
         variableExpression.variable.accept(this);
-        instruction("ldw",register.toString(),register.toString(),"0");
+        code.add(Opcode.LDW,register,register,0);
 
     }
 
     public void visit(AssignStatement assignStatement){
-        assignStatement.target.accept(this);
-        assignStatement.value.accept(this);
-        instruction("stw",register.toString(),register.previous(1).toString(),"0");
-        register = register.previous(2);
+        Register base = register;
+        int target = registerNeed.registerOf(assignStatement.target);
+        if(target != 0){
+            Register value = operand(assignStatement.value);
+            if(value.number != target) code.add(Opcode.ADD,Register.of(target),value,ZERO);
+            register = base;
+            return;
+        }
+        Register[] operands = evaluatePair(registerNeed.of(assignStatement.target), () -> {
+                    assignStatement.target.accept(this);
+                    return register;
+                },
+                registerNeed.of(assignStatement.value), () -> operand(assignStatement.value));
+        code.add(Opcode.STW,operands[1],operands[0],0);
+        register = base;
     }
 
+    /**
+     * Evaluates an expression into the next register of the register stack, unless it reads a variable kept in a
+     * register. Such a variable is used in place.
+     *
+     * @return The register holding the value of the expression.
+     */
+    private Register operand(Expression expression){
+        int variable = registerNeed.registerOf(expression);
+        if(variable != 0) return Register.of(variable);
+        expression.accept(this);
+        return register;
+    }
+
+    /**
+     * Computes the address of a variable into the next register of the register stack, unless it has been computed
+     * before the enclosing loop. Such an address is used in place.
+     *
+     * @return The register holding the address of the variable.
+     */
+    private Register address(Variable variable){
+        if(!invariants.isEmpty()){
+            Register address = invariants.get(LoopInvariants.key(variable));
+            if(address != null) return address;
+        }
+        variable.accept(this);
+        return register;
+    }
 
+    private Register[] evaluateOperands(BinaryExpression binaryExpression){
+        return evaluatePair(registerNeed.of(binaryExpression.leftOperand), () -> operand(binaryExpression.leftOperand),
+                registerNeed.of(binaryExpression.rightOperand), () -> operand(binaryExpression.rightOperand));
+    }
 
     /**
+     * Evaluates two operands onto the register stack, the one needing more registers first. If the second operand
+     * needs more registers than left by the first one, the first one is spilled to the frame meanwhile. This is exactly
+     * the order assumed by {@link RegisterNeed} when the spill area is allocated.
+     * <p>
+     * The caller pops both operands off the register stack by restoring the register it started with.
      *
-     * @param mnemonic The Operation to be performed
-     * @param operands The Operands, must be >=1
+     * @return The registers holding the values of the left and the right operand.
      */
-    private void instruction(String mnemonic,String... operands){
-        if(operands.length <1) throw new IllegalArgumentException("Operands.length must be >=1");
-        String formatString =String.format("\t"+mnemonic+"\t"+("%s,".repeat(operands.length-1))+"%s",operands);
-        output.emit(formatString);
+    private Register[] evaluatePair(int leftNeed, Supplier<Register> left, int rightNeed, Supplier<Register> right){
+        boolean leftFirst = RegisterNeed.isLeftFirst(leftNeed,rightNeed);
+        int secondNeed = leftFirst ? rightNeed : leftNeed;
+
+        Register first = (leftFirst ? left : right).get();
+        Register second;
+        if(secondNeed <= lastRegister.number - register.number){
+            second = (leftFirst ? right : left).get();
+        } else {
+            spillDepth++;
+            int offset = spillOffset - spillDepth * RegisterNeed.SLOT_BYTESIZE;
+            Statistics.count(Statistics.Counter.SPILLS);
+            code.add(Opcode.STW,first,FRAME_POINTER,offset);
+            register = register.previous(1);
+            second = (leftFirst ? right : left).get();
+            push();
+            code.add(Opcode.LDW,register,FRAME_POINTER,offset);
+            first = register;
+            spillDepth--;
+        }
+        return leftFirst ? new Register[]{first, second} : new Register[]{second, first};
+    }
+
+    private void push(){
+        register = register.next(1);
+        if(!register.isFreeUse() || register.number > lastRegister.number){
+            throw new IllegalStateException("Register stack overflow at "+register);
+        }
     }
 
 
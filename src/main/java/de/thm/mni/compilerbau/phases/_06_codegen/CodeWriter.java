@@ -0,0 +1,64 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the generated code either to a {@link PrintWriter} or, in large blocks, to a channel.
+ * <p>
+ * Assembler code only consists of ASCII characters, so the code is written to a channel without a charset encoder.
+ */
+class CodeWriter {
+    /**
+     * The buffer lives on the heap. A direct buffer per compilation keeps its native memory until the buffer happens to
+     * be collected, so a resident compiler would pile up direct memory.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PrintWriter writer;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    CodeWriter(PrintWriter writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.buffer = null;
+    }
+
+    CodeWriter(WritableByteChannel channel) {
+        this.writer = null;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    void write(CharSequence code) {
+        if (writer != null) {
+            writer.append(code);
+            return;
+        }
+
+        for (int i = 0; i < code.length(); i++) {
+            if (!buffer.hasRemaining()) flush();
+            char c = code.charAt(i);
+            buffer.put((byte) (c < 0x80 ? c : '?'));
+        }
+    }
+
+    /**
+     * Writes all buffered code to the channel.
+     */
+    void flush() {
+        if (channel == null) return;
+
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,272 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instructions generated for a single procedure, before they are printed as assembler code.
+ * <p>
+ * Every instruction is stored as a record of primitive values in parallel arrays: its opcode, up to three operands and
+ * the kind of its last operand. Registers are stored by their number, labels by their number within the procedure and
+ * names of other procedures by their index in a table of symbols.
+ */
+final class InstructionList {
+    /**
+     * The kinds of the last operand of an instruction.
+     */
+    static final byte REGISTER = 0, IMMEDIATE = 1, LABEL = 2, SYMBOL = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    final String procedureName;
+
+    private byte[] opcodes;
+    private byte[] kinds;
+    private int[] first;
+    private int[] second;
+    private int[] third;
+    private int size = 0;
+
+    private final List<String> symbols;
+    private final Map<String, Integer> symbolIndex;
+    private int labelCount;
+
+    InstructionList(String procedureName) {
+        this(procedureName, new ArrayList<>(), new HashMap<>(), 0, INITIAL_CAPACITY);
+    }
+
+    private InstructionList(String procedureName, List<String> symbols, Map<String, Integer> symbolIndex,
+                            int labelCount, int capacity) {
+        this.procedureName = procedureName;
+        this.symbols = symbols;
+        this.symbolIndex = symbolIndex;
+        this.labelCount = labelCount;
+        opcodes = new byte[capacity];
+        kinds = new byte[capacity];
+        first = new int[capacity];
+        second = new int[capacity];
+        third = new int[capacity];
+    }
+
+    /**
+     * @return The number of a new label within this procedure.
+     */
+    int newLabel() {
+        return labelCount++;
+    }
+
+    private int symbol(String name) {
+        return symbolIndex.computeIfAbsent(name, key -> {
+            symbols.add(key);
+            return symbols.size() - 1;
+        });
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= opcodes.length) return;
+        capacity = Math.max(capacity, 2 * opcodes.length);
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        third = Arrays.copyOf(third, capacity);
+    }
+
+    /**
+     * Adds an entry given by its raw operands.
+     */
+    void add(Opcode opcode, int a, int b, int c, byte kind) {
+        ensureCapacity(size + 1);
+        set(size, opcode, a, b, c, kind);
+        size++;
+    }
+
+    /**
+     * Replaces an entry by another one.
+     */
+    void set(int i, Opcode opcode, int a, int b, int c, byte kind) {
+        opcodes[i] = (byte) opcode.ordinal();
+        kinds[i] = kind;
+        first[i] = a;
+        second[i] = b;
+        third[i] = c;
+    }
+
+    /**
+     * Inserts all entries of another list in front of an entry. The other list must not refer to labels or symbols.
+     */
+    void insert(int i, InstructionList entries) {
+        insert(new int[]{i}, entries);
+    }
+
+    /**
+     * Inserts all entries of another list in front of each of some entries, moving every entry at most once.
+     * The other list must not refer to labels or symbols.
+     *
+     * @param positions The indices of the entries, in ascending order.
+     */
+    void insert(int[] positions, InstructionList entries) {
+        int count = entries.size;
+        int newSize = size + positions.length * count;
+        ensureCapacity(newSize);
+        // From the last position on, so every entry is moved directly to its final index
+        int end = size;
+        int target = newSize;
+        for (int p = positions.length - 1; p >= 0; p--) {
+            int start = positions[p];
+            target -= end - start;
+            move(start, target, end - start);
+            target -= count;
+            System.arraycopy(entries.opcodes, 0, opcodes, target, count);
+            System.arraycopy(entries.kinds, 0, kinds, target, count);
+            System.arraycopy(entries.first, 0, first, target, count);
+            System.arraycopy(entries.second, 0, second, target, count);
+            System.arraycopy(entries.third, 0, third, target, count);
+            end = start;
+        }
+        size = newSize;
+    }
+
+    private void move(int from, int to, int length) {
+        System.arraycopy(opcodes, from, opcodes, to, length);
+        System.arraycopy(kinds, from, kinds, to, length);
+        System.arraycopy(first, from, first, to, length);
+        System.arraycopy(second, from, second, to, length);
+        System.arraycopy(third, from, third, to, length);
+    }
+
+    /**
+     * @return An empty list taking the place of this one. It shares the labels and symbols of this list, so entries
+     * can be copied to it unchanged with {@link #add(InstructionList, int)}. This list must not be changed anymore.
+     */
+    InstructionList replacement() {
+        return new InstructionList(procedureName, symbols, symbolIndex, labelCount, size);
+    }
+
+    /**
+     * Adds a copy of an entry of the list this one is the {@link #replacement()} of.
+     */
+    void add(InstructionList original, int i) {
+        add(original.opcode(i), original.first[i], original.second[i], original.third[i], original.kinds[i]);
+    }
+
+    /**
+     * Removes entries, keeping the order of all others.
+     *
+     * @param removed The indices of the entries to remove.
+     */
+    void remove(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed.get(i)) continue;
+            opcodes[kept] = opcodes[i];
+            kinds[kept] = kinds[i];
+            first[kept] = first[i];
+            second[kept] = second[i];
+            third[kept] = third[i];
+            kept++;
+        }
+        size = kept;
+    }
+
+    /**
+     * @return The number of label ids handed out by {@link #newLabel()}.
+     */
+    int labelCount() {
+        return labelCount;
+    }
+
+    void add(Opcode opcode, Register r1, Register r2, Register r3) {
+        add(opcode, r1.number, r2.number, r3.number, REGISTER);
+    }
+
+    void add(Opcode opcode, Register r1, Register r2, int value) {
+        add(opcode, r1.number, r2.number, value, IMMEDIATE);
+    }
+
+    /**
+     * Adds a branch to a label of this procedure.
+     */
+    void addBranch(Opcode opcode, Register r1, Register r2, int label) {
+        add(opcode, r1.number, r2.number, label, LABEL);
+    }
+
+    /**
+     * Adds a branch to a global name.
+     */
+    void addBranch(Opcode opcode, Register r1, Register r2, String name) {
+        add(opcode, r1.number, r2.number, symbol(name), SYMBOL);
+    }
+
+    void addJump(int label) {
+        add(Opcode.J, label, 0, 0, LABEL);
+    }
+
+    /**
+     * Adds a jump to another procedure, which returns to the caller of this one.
+     */
+    void addJump(String procedure) {
+        add(Opcode.J, symbol(procedure), 0, 0, SYMBOL);
+    }
+
+    void addCall(String procedure) {
+        add(Opcode.JAL, symbol(procedure), 0, 0, SYMBOL);
+    }
+
+    void addReturn(Register register) {
+        add(Opcode.JR, register.number, 0, 0, REGISTER);
+    }
+
+    void addLabel(int label) {
+        add(Opcode.LABEL, label, 0, 0, LABEL);
+    }
+
+    /**
+     * @return The number of entries, including label definitions.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of instructions, not counting label definitions.
+     */
+    int instructionCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (opcodes[i] != Opcode.LABEL.ordinal()) count++;
+        }
+        return count;
+    }
+
+    Opcode opcode(int i) {
+        return Opcode.of(opcodes[i]);
+    }
+
+    /**
+     * @return The kind of the last operand of an instruction.
+     */
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    int first(int i) {
+        return first[i];
+    }
+
+    int second(int i) {
+        return second[i];
+    }
+
+    int third(int i) {
+        return third[i];
+    }
+
+    String symbol(int index) {
+        return symbols.get(index);
+    }
+}
@@ -0,0 +1,89 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * Computes which registers are live after every instruction of a procedure, i.e. which registers may be read again
+ * before they are written.
+ * <p>
+ * Sets of registers are stored as bit masks, with bit n standing for register $n. Only registers available for free use
+ * are tracked: by the ECO32 calling convention $8 to $15 are destroyed by a call, while $16 to $23 are preserved across
+ * a call and therefore live on return of a procedure, as well as on a jump to another procedure, which returns in its
+ * place. A branch to a global name such as '_indexError' never returns.
+ */
+final class Liveness {
+    static final int CALLER_SAVED = 0x0000ff00;
+    static final int CALLEE_SAVED = 0x00ff0000;
+
+    private final int[] liveOut;
+
+    Liveness(InstructionList code) {
+        int size = code.size();
+        int[] labels = new int[code.labelCount()];
+        for (int i = 0; i < size; i++) {
+            if (code.opcode(i) == Opcode.LABEL) labels[code.first(i)] = i;
+        }
+
+        int[] liveIn = new int[size];
+        liveOut = new int[size];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--) {
+                Opcode opcode = code.opcode(i);
+                int out;
+                if (opcode == Opcode.JR || (opcode == Opcode.J && code.kind(i) == InstructionList.SYMBOL)) {
+                    out = CALLEE_SAVED;
+                } else if (opcode == Opcode.J) {
+                    out = liveIn[labels[code.first(i)]];
+                } else {
+                    out = i + 1 < size ? liveIn[i + 1] : 0;
+                    if (opcode.isBranch() && code.kind(i) == InstructionList.LABEL) out |= liveIn[labels[code.third(i)]];
+                }
+                int in = uses(code, i) | (out & ~defines(code, i));
+                if (in != liveIn[i] || out != liveOut[i]) {
+                    liveIn[i] = in;
+                    liveOut[i] = out;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the register may be read after the instruction before it is written.
+     */
+    boolean isLiveAfter(int i, int register) {
+        return (liveOut[i] & bit(register)) != 0;
+    }
+
+    static int bit(int register) {
+        return register >= 8 && register <= 23 ? 1 << register : 0;
+    }
+
+    /**
+     * @return The registers read by an instruction.
+     */
+    static int uses(InstructionList code, int i) {
+        Opcode opcode = code.opcode(i);
+        switch (opcode.format) {
+            case THREE:
+                int registers = bit(code.second(i));
+                if (opcode == Opcode.STW || opcode.isBranch()) registers |= bit(code.first(i));
+                if (code.kind(i) == InstructionList.REGISTER) registers |= bit(code.third(i));
+                return registers;
+            case ONE:
+                return opcode == Opcode.JR ? bit(code.first(i)) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return The registers written by an instruction.
+     */
+    static int defines(InstructionList code, int i) {
+        Opcode opcode = code.opcode(i);
+        if (opcode == Opcode.JAL) return CALLER_SAVED;
+        if (opcode.format != Opcode.Format.THREE || opcode == Opcode.STW || opcode.isBranch()) return 0;
+        return bit(code.first(i));
+    }
+}
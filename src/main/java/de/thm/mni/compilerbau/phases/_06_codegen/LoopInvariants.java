@@ -0,0 +1,276 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.phases._05_varalloc.RegisterNeed;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the addresses of arrays, that do not change while a loop runs, so the code generator can compute them once
+ * before the loop instead of in every iteration.
+ * <p>
+ * The address of a named array never changes: it is either part of the frame or passed as reference. The address of
+ * an array within an array, like {@code f[i]} of {@code f[i][j]}, does not change as long as its index does not. An
+ * index is invariant if it only reads int variables, that are neither references nor written in the loop, either by
+ * an assignment or as reference argument. Only divisions by literals other than zero are allowed, so computing the
+ * address early never fails.
+ * <p>
+ * An address is computed before the loop without its bounds check, so it is only hoisted if {@link RangeAnalysis} has
+ * proven every bounds check of every occurrence of it within the loop.
+ */
+final class LoopInvariants extends DoNothingVisitor {
+    /**
+     * The instructions needed to compute the address of an array within an array, at least.
+     */
+    private static final int ACCESS_COST = 3;
+    private static final int LOOP_WEIGHT = 8;
+
+    /**
+     * The result of analyzing a single loop.
+     */
+    static final class Loop {
+        /**
+         * The invariant addresses, the most profitable first.
+         */
+        final List<Variable> invariants;
+        /**
+         * The number of registers needed by the condition and any statement of the loop.
+         */
+        final int registerNeed;
+        final boolean hasCall;
+
+        private Loop(List<Variable> invariants, int registerNeed, boolean hasCall) {
+            this.invariants = invariants;
+            this.registerNeed = registerNeed;
+            this.hasCall = hasCall;
+        }
+    }
+
+    /**
+     * An address occurring in the loop. Occurrences are identified by their {@link #key(Variable)}.
+     */
+    private static final class Candidate {
+        final Variable variable;
+        int weight = 0;
+        boolean hoistable = true;
+
+        Candidate(Variable variable) {
+            this.variable = variable;
+        }
+
+        int benefit() {
+            return variable instanceof ArrayAccess ? weight * ACCESS_COST : weight;
+        }
+    }
+
+    private final SymbolTable localTable;
+    private final RegisterNeed registerNeed;
+    private final Set<ArrayAccess> accessesInBounds;
+
+    private final Set<VariableEntry> written = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Candidate> candidates = new LinkedHashMap<>();
+    private int maxNeed;
+    private boolean hasCall;
+    private int weight;
+    /**
+     * false while the written variables are collected, true while the candidates are.
+     */
+    private boolean collecting;
+
+    LoopInvariants(SymbolTable localTable, RegisterNeed registerNeed, Set<ArrayAccess> accessesInBounds) {
+        this.localTable = localTable;
+        this.registerNeed = registerNeed;
+        this.accessesInBounds = accessesInBounds;
+    }
+
+    Loop analyze(WhileStatement whileStatement) {
+        written.clear();
+        candidates.clear();
+        maxNeed = 0;
+        hasCall = false;
+
+        collecting = false;
+        whileStatement.accept(this);
+        collecting = true;
+        weight = 1;
+        whileStatement.accept(this);
+
+        List<Candidate> hoistable = new ArrayList<>();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.hoistable) hoistable.add(candidate);
+        }
+        hoistable.sort(Comparator.comparingInt(Candidate::benefit).reversed());
+        List<Variable> invariants = new ArrayList<>(hoistable.size());
+        for (Candidate candidate : hoistable) invariants.add(candidate.variable);
+        return new Loop(invariants, maxNeed, hasCall);
+    }
+
+    /**
+     * @return A text identifying all variables and expressions of the same structure.
+     */
+    static String key(Variable variable) {
+        StringBuilder key = new StringBuilder();
+        appendKey(key, variable);
+        return key.toString();
+    }
+
+    private static void appendKey(StringBuilder key, Variable variable) {
+        if (variable instanceof NamedVariable) {
+            key.append(((NamedVariable) variable).name);
+        } else {
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            appendKey(key, arrayAccess.array);
+            key.append('[');
+            appendKey(key, arrayAccess.index);
+            key.append(']');
+        }
+    }
+
+    private static void appendKey(StringBuilder key, Expression expression) {
+        if (expression instanceof IntLiteral) {
+            key.append(((IntLiteral) expression).value);
+        } else if (expression instanceof VariableExpression) {
+            appendKey(key, ((VariableExpression) expression).variable);
+        } else {
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            key.append('(');
+            appendKey(key, binaryExpression.leftOperand);
+            key.append(' ').append(binaryExpression.operator).append(' ');
+            appendKey(key, binaryExpression.rightOperand);
+            key.append(')');
+        }
+    }
+
+    private boolean isInvariant(Variable variable) {
+        if (variable instanceof NamedVariable) return true;
+        ArrayAccess arrayAccess = (ArrayAccess) variable;
+        return accessesInBounds.contains(arrayAccess) && isInvariant(arrayAccess.array) && isInvariant(arrayAccess.index);
+    }
+
+    private boolean isInvariant(Expression expression) {
+        if (expression instanceof IntLiteral) return true;
+        if (expression instanceof VariableExpression) {
+            Variable variable = ((VariableExpression) expression).variable;
+            if (!(variable instanceof NamedVariable)) return false;
+            VariableEntry entry = (VariableEntry) localTable.lookup(((NamedVariable) variable).name);
+            return entry.type == PrimitiveType.intType && !entry.isReference && !written.contains(entry);
+        }
+        BinaryExpression binaryExpression = (BinaryExpression) expression;
+        switch (binaryExpression.operator) {
+            case ADD:
+            case SUB:
+            case MUL:
+                return isInvariant(binaryExpression.leftOperand) && isInvariant(binaryExpression.rightOperand);
+            case DIV:
+                return binaryExpression.rightOperand instanceof IntLiteral
+                        && ((IntLiteral) binaryExpression.rightOperand).value != 0
+                        && isInvariant(binaryExpression.leftOperand);
+            default:
+                return false;
+        }
+    }
+
+    private void write(Variable variable) {
+        if (variable instanceof NamedVariable) {
+            written.add((VariableEntry) localTable.lookup(((NamedVariable) variable).name));
+        }
+    }
+
+    private void statement(Statement statement) {
+        maxNeed = Math.max(maxNeed, registerNeed.of(statement));
+    }
+
+    /**
+     * Counts the address of the array accessed, if it is invariant, or of the outermost invariant array within.
+     */
+    @Override
+    public void visit(ArrayAccess arrayAccess) {
+        if (!collecting) return;
+        Variable array = arrayAccess.array;
+        while (true) {
+            Variable occurrence = array;
+            Candidate candidate = candidates.computeIfAbsent(key(array), key -> new Candidate(occurrence));
+            if (isInvariant(array)) {
+                candidate.weight += weight;
+                break;
+            }
+            candidate.hoistable = false;
+            if (!(array instanceof ArrayAccess)) break;
+            array = ((ArrayAccess) array).array;
+        }
+        for (Variable variable = arrayAccess; variable instanceof ArrayAccess; variable = ((ArrayAccess) variable).array) {
+            ((ArrayAccess) variable).index.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(VariableExpression variableExpression) {
+        variableExpression.variable.accept(this);
+    }
+
+    @Override
+    public void visit(BinaryExpression binaryExpression) {
+        binaryExpression.leftOperand.accept(this);
+        binaryExpression.rightOperand.accept(this);
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        if (!collecting) {
+            statement(assignStatement);
+            write(assignStatement.target);
+        }
+        assignStatement.target.accept(this);
+        assignStatement.value.accept(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        if (!collecting) {
+            statement(callStatement);
+            hasCall = true;
+            ProcedureEntry callee = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.argumentList.size(); i++) {
+                if (callee.parameterTypes.get(i).isReference) {
+                    write(((VariableExpression) callStatement.argumentList.get(i)).variable);
+                }
+            }
+        }
+        for (Expression argument : callStatement.argumentList) argument.accept(this);
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        if (!collecting) statement(ifStatement);
+        ifStatement.condition.accept(this);
+        ifStatement.thenPart.accept(this);
+        ifStatement.elsePart.accept(this);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        if (!collecting) statement(whileStatement);
+        int outer = weight;
+        weight *= LOOP_WEIGHT;
+        whileStatement.condition.accept(this);
+        whileStatement.body.accept(this);
+        weight = outer;
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        for (Statement statement : compoundStatement.statements) statement.accept(this);
+    }
+}
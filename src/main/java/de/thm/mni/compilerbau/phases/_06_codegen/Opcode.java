@@ -0,0 +1,69 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * The ECO32 instructions used by the code generator, together with the shape of their operands.
+ */
+enum Opcode {
+    ADD(Format.THREE),
+    SUB(Format.THREE),
+    MUL(Format.THREE),
+    DIV(Format.THREE),
+    SLL(Format.THREE),
+    SLR(Format.THREE),
+    SAR(Format.THREE),
+    LDW(Format.THREE),
+    STW(Format.THREE),
+    BEQ(Format.THREE),
+    BNE(Format.THREE),
+    BLT(Format.THREE),
+    BLE(Format.THREE),
+    BGT(Format.THREE),
+    BGE(Format.THREE),
+    BGEU(Format.THREE),
+    J(Format.ONE),
+    JAL(Format.ONE),
+    JR(Format.ONE),
+    /**
+     * Not an instruction, but the definition of a label.
+     */
+    LABEL(Format.LABEL);
+
+    /**
+     * The shapes of the operands.
+     */
+    enum Format {
+        /**
+         * Two registers followed by a register, an immediate value or a jump target.
+         */
+        THREE,
+        /**
+         * A single register or jump target.
+         */
+        ONE,
+        /**
+         * The definition of a label.
+         */
+        LABEL
+    }
+
+    private static final Opcode[] VALUES = values();
+
+    final Format format;
+    final String mnemonic;
+
+    Opcode(Format format) {
+        this.format = format;
+        this.mnemonic = name().toLowerCase();
+    }
+
+    static Opcode of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * @return true if this is a conditional branch.
+     */
+    boolean isBranch() {
+        return compareTo(BEQ) >= 0 && compareTo(BGEU) <= 0;
+    }
+}
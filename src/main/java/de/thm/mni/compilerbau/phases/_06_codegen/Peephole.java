@@ -0,0 +1,213 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.utils.Statistics;
+
+import java.util.BitSet;
+
+/**
+ * Removes wasteful instruction sequences from the code of a single procedure.
+ * <p>
+ * The optimizer sweeps over the instructions and tries every rule at every instruction. A rule matches an instruction
+ * with the next instruction reading or writing the same register, looking ahead at most {@link #WINDOW} instructions
+ * within the same basic block. The sweeps are repeated until no rule matches any more. The rules are:
+ * <dl>
+ * <dt>{@link Rule#CONSTANT_OPERAND}</dt>
+ * <dd>{@code add $t,$0,k ... op $d,$s,$t} becomes {@code op $d,$s,k}, if op is add, sub, mul or div and $t is not read
+ * afterwards. For add and mul, the constant may also be the second operand.</dd>
+ * <dt>{@link Rule#ADDRESS_OFFSET}</dt>
+ * <dd>{@code add $a,$b,k ... ldw $d,$a,m} becomes {@code ldw $d,$b,k+m}, if $a is not read afterwards and $b is not
+ * written in between. The same holds for stw.</dd>
+ * <dt>{@link Rule#REGISTER_COPY}</dt>
+ * <dd>{@code op $t,... add $d,$t,$0} becomes {@code op $d,...}, if op writes $t, the copy follows it directly and $t is
+ * not read afterwards. This stores values computed for a register variable directly in its register.</dd>
+ * <dt>{@link Rule#JUMP_TO_NEXT}</dt>
+ * <dd>A jump or branch to a label directly following it is removed.</dd>
+ * </dl>
+ * Immediate values and offsets are only combined as long as they fit into the 16 bits of an ECO32 instruction.
+ */
+final class Peephole {
+    private static final int WINDOW = 16;
+
+    enum Rule {
+        CONSTANT_OPERAND(Statistics.Counter.PEEPHOLE_CONSTANTS),
+        ADDRESS_OFFSET(Statistics.Counter.PEEPHOLE_ADDRESSES),
+        REGISTER_COPY(Statistics.Counter.PEEPHOLE_COPIES),
+        JUMP_TO_NEXT(Statistics.Counter.PEEPHOLE_JUMPS);
+
+        /**
+         * Counts the instructions removed by this rule.
+         */
+        final Statistics.Counter counter;
+
+        Rule(Statistics.Counter counter) {
+            this.counter = counter;
+        }
+    }
+
+    private final InstructionList code;
+    private final BitSet removed = new BitSet();
+    /**
+     * The instructions rewritten in the current sweep. The liveness of registers around them is only known again in
+     * the next sweep, so no other rule may match them before.
+     */
+    private final BitSet rewritten = new BitSet();
+    private Liveness liveness;
+
+    private Peephole(InstructionList code) {
+        this.code = code;
+    }
+
+    static void optimize(InstructionList code) {
+        Peephole peephole = new Peephole(code);
+        while (peephole.sweep()) ;
+    }
+
+    /**
+     * @return true if any instruction was removed.
+     */
+    private boolean sweep() {
+        liveness = new Liveness(code);
+        removed.clear();
+        rewritten.clear();
+        for (int i = 0; i < code.size(); i++) {
+            if (removed.get(i) || rewritten.get(i)) continue;
+            if (!constantOperand(i) && !addressOffset(i) && !registerCopy(i)) jumpToNext(i);
+        }
+        if (removed.isEmpty()) return false;
+        code.remove(removed);
+        return true;
+    }
+
+    private boolean constantOperand(int i) {
+        if (code.opcode(i) != Opcode.ADD || code.kind(i) != InstructionList.IMMEDIATE || code.second(i) != 0) {
+            return false;
+        }
+        int t = code.first(i);
+        int value = code.third(i);
+        if (Liveness.bit(t) == 0 || !fitsImmediate(value)) return false;
+
+        int j = nextAccess(i, t, -1);
+        if (j < 0) return false;
+        Opcode use = code.opcode(j);
+        if (!isArithmetic(use) || code.kind(j) != InstructionList.REGISTER) return false;
+        int d = code.first(j);
+        int s = code.second(j);
+        if (code.third(j) == t && s != t) {
+            // op $d,$s,$t
+        } else if (s == t && code.third(j) != t && (use == Opcode.ADD || use == Opcode.MUL)) {
+            s = code.third(j);
+        } else {
+            return false;
+        }
+        if (d != t && liveness.isLiveAfter(j, t)) return false;
+
+        code.set(j, use, d, s, value, InstructionList.IMMEDIATE);
+        remove(i, j, Rule.CONSTANT_OPERAND);
+        return true;
+    }
+
+    private boolean addressOffset(int i) {
+        if (code.opcode(i) != Opcode.ADD || code.kind(i) != InstructionList.IMMEDIATE) return false;
+        int a = code.first(i);
+        int b = code.second(i);
+        if (Liveness.bit(a) == 0) return false;
+
+        int j = nextAccess(i, a, b);
+        if (j < 0) return false;
+        Opcode use = code.opcode(j);
+        if ((use != Opcode.LDW && use != Opcode.STW) || code.second(j) != a) return false;
+        if (use == Opcode.STW && code.first(j) == a) return false;
+        long offset = (long) code.third(i) + code.third(j);
+        if (!fitsImmediate(offset)) return false;
+        if (!(use == Opcode.LDW && code.first(j) == a) && liveness.isLiveAfter(j, a)) return false;
+
+        code.set(j, use, code.first(j), b, (int) offset, InstructionList.IMMEDIATE);
+        remove(i, j, Rule.ADDRESS_OFFSET);
+        return true;
+    }
+
+    private boolean registerCopy(int i) {
+        if (code.opcode(i) != Opcode.ADD || code.kind(i) != InstructionList.REGISTER || code.third(i) != 0) return false;
+        int d = code.first(i);
+        int t = code.second(i);
+        if (Liveness.bit(t) == 0 || Liveness.bit(d) == 0 || d == t || liveness.isLiveAfter(i, t)) return false;
+
+        int p = i - 1;
+        while (p >= 0 && removed.get(p)) p--;
+        if (p < 0 || rewritten.get(p) || writes(p) != t) return false;
+        Opcode definition = code.opcode(p);
+        if (definition.format != Opcode.Format.THREE) return false;
+
+        code.set(p, definition, d, code.second(p), code.third(p), code.kind(p));
+        removed.set(i);
+        rewritten.set(p);
+        Statistics.count(Rule.REGISTER_COPY.counter);
+        return true;
+    }
+
+    private boolean jumpToNext(int i) {
+        Opcode opcode = code.opcode(i);
+        int target;
+        if (opcode == Opcode.J && code.kind(i) == InstructionList.LABEL) {
+            target = code.first(i);
+        } else if (opcode.isBranch() && code.kind(i) == InstructionList.LABEL) {
+            target = code.third(i);
+        } else {
+            return false;
+        }
+
+        for (int j = i + 1; j < code.size() && code.opcode(j) == Opcode.LABEL; j++) {
+            if (code.first(j) == target) {
+                removed.set(i);
+                Statistics.count(Rule.JUMP_TO_NEXT.counter);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next instruction reading or writing a register within the same basic block.
+     *
+     * @param i        The instruction to start after.
+     * @param register The register.
+     * @param guarded  A register, that must not be written before, or -1.
+     * @return The index of the instruction or -1, if there is none within the window.
+     */
+    private int nextAccess(int i, int register, int guarded) {
+        int bit = Liveness.bit(register);
+        for (int j = i + 1, seen = 0; j < code.size() && seen < WINDOW; j++) {
+            if (removed.get(j)) continue;
+            seen++;
+            Opcode opcode = code.opcode(j);
+            // Only branches to global names like '_indexError' may be passed, which never return
+            if (opcode.format != Opcode.Format.THREE
+                    || (opcode.isBranch() && code.kind(j) != InstructionList.SYMBOL)) return -1;
+            if (((Liveness.uses(code, j) | Liveness.defines(code, j)) & bit) != 0) return rewritten.get(j) ? -1 : j;
+            if (guarded >= 0 && writes(j) == guarded) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The register written by an instruction of three operands, or -1.
+     */
+    private int writes(int j) {
+        Opcode opcode = code.opcode(j);
+        return opcode == Opcode.STW || opcode.isBranch() ? -1 : code.first(j);
+    }
+
+    private void remove(int i, int j, Rule rule) {
+        removed.set(i);
+        rewritten.set(j);
+        Statistics.count(rule.counter);
+    }
+
+    private static boolean isArithmetic(Opcode opcode) {
+        return opcode == Opcode.ADD || opcode == Opcode.SUB || opcode == Opcode.MUL || opcode == Opcode.DIV;
+    }
+
+    private static boolean fitsImmediate(long value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+}
@@ -0,0 +1,331 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the array accesses of a procedure, whose index is always within the bounds of the array, so the code generator
+ * can leave out their bounds check.
+ * <p>
+ * The analysis computes an interval of possible values for every tracked variable at every statement: local variables
+ * and value parameters of type int, that are never passed as reference argument and therefore only change by
+ * assignments in the procedure itself. Conditions narrow the intervals within their branches and loop bodies, so the
+ * counter of a loop like {@code i := 1; while (i < 20) { ... i := i + 1; }} is known to lie between 1 and 19 inside.
+ * <p>
+ * A while-statement is analyzed until the intervals at its condition do not change any more. A bound still changing
+ * after the first pass is widened to the smallest or largest integer, so this takes at most three passes. Arithmetic
+ * that may overflow yields the interval of all integers, since the ECO32 wraps around.
+ */
+final class RangeAnalysis extends DoNothingVisitor {
+    /**
+     * A closed interval of 32 bit integers, stored as long so bounds can be computed without overflow.
+     */
+    private static final class Interval {
+        static final Interval ALL = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        final long low, high;
+
+        private Interval(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * @return The interval, or null if it is empty. All integers if a bound does not fit into 32 bits.
+         */
+        static Interval of(long low, long high) {
+            if (low > high) return null;
+            if (low < Integer.MIN_VALUE || high > Integer.MAX_VALUE) return ALL;
+            return new Interval(low, high);
+        }
+
+        Interval union(Interval other) {
+            return new Interval(Math.min(low, other.low), Math.max(high, other.high));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Interval && ((Interval) other).low == low && ((Interval) other).high == high;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(low) * 31 + Long.hashCode(high);
+        }
+    }
+
+    private final SymbolTable localTable;
+    private final Set<VariableEntry> addressTaken = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * Every array access visited together with its index being in bounds on all visits so far.
+     */
+    private final Map<ArrayAccess, Boolean> inBounds = new IdentityHashMap<>();
+    /**
+     * The intervals of the tracked variables before the current statement. A variable without an interval may have
+     * any value. null if the statement is never executed.
+     */
+    private Map<VariableEntry, Interval> state = new IdentityHashMap<>();
+
+    private RangeAnalysis(SymbolTable localTable) {
+        this.localTable = localTable;
+    }
+
+    /**
+     * @return The array accesses of the procedure, whose index is always within bounds when they are executed.
+     */
+    static Set<ArrayAccess> accessesInBounds(ProcedureDeclaration procedureDeclaration, ProcedureEntry procedureEntry) {
+        RangeAnalysis analysis = new RangeAnalysis(procedureEntry.localTable);
+        for (Statement statement : procedureDeclaration.body) analysis.collectAddressTaken(statement);
+        for (Statement statement : procedureDeclaration.body) statement.accept(analysis);
+
+        Set<ArrayAccess> accesses = Collections.newSetFromMap(new IdentityHashMap<>());
+        analysis.inBounds.forEach((access, inBounds) -> {
+            if (inBounds) accesses.add(access);
+        });
+        return accesses;
+    }
+
+    private void collectAddressTaken(Statement statement) {
+        if (statement instanceof CallStatement) {
+            CallStatement callStatement = (CallStatement) statement;
+            ProcedureEntry callee = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.argumentList.size(); i++) {
+                if (!callee.parameterTypes.get(i).isReference) continue;
+                VariableEntry entry = tracked(((VariableExpression) callStatement.argumentList.get(i)).variable);
+                if (entry != null) addressTaken.add(entry);
+            }
+        } else if (statement instanceof IfStatement) {
+            collectAddressTaken(((IfStatement) statement).thenPart);
+            collectAddressTaken(((IfStatement) statement).elsePart);
+        } else if (statement instanceof WhileStatement) {
+            collectAddressTaken(((WhileStatement) statement).body);
+        } else if (statement instanceof CompoundStatement) {
+            for (Statement inner : ((CompoundStatement) statement).statements) collectAddressTaken(inner);
+        }
+    }
+
+    /**
+     * @return The entry of a named variable of type int, that is neither a reference nor passed as reference, or null.
+     */
+    private VariableEntry tracked(Variable variable) {
+        if (!(variable instanceof NamedVariable)) return null;
+        VariableEntry entry = (VariableEntry) localTable.lookup(((NamedVariable) variable).name);
+        if (entry.type != PrimitiveType.intType || entry.isReference || addressTaken.contains(entry)) return null;
+        return entry;
+    }
+
+    private Interval evaluate(Expression expression) {
+        if (expression instanceof IntLiteral) {
+            int value = ((IntLiteral) expression).value;
+            return Interval.of(value, value);
+        } else if (expression instanceof VariableExpression) {
+            Variable variable = ((VariableExpression) expression).variable;
+            access(variable);
+            VariableEntry entry = tracked(variable);
+            return entry == null ? Interval.ALL : state.getOrDefault(entry, Interval.ALL);
+        } else if (expression instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            Interval left = evaluate(binaryExpression.leftOperand);
+            Interval right = evaluate(binaryExpression.rightOperand);
+            switch (binaryExpression.operator) {
+                case ADD:
+                    return Interval.of(left.low + right.low, left.high + right.high);
+                case SUB:
+                    return Interval.of(left.low - right.high, left.high - right.low);
+                case MUL:
+                    return corners(left.low * right.low, left.low * right.high, left.high * right.low, left.high * right.high);
+                case DIV:
+                    if (right.low <= 0 && right.high >= 0) return Interval.ALL;
+                    return corners(left.low / right.low, left.low / right.high, left.high / right.low, left.high / right.high);
+            }
+        }
+        return Interval.ALL;
+    }
+
+    private static Interval corners(long a, long b, long c, long d) {
+        return Interval.of(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+
+    /**
+     * Records whether the indices of an array access and all array accesses within are in bounds.
+     */
+    private void access(Variable variable) {
+        if (!(variable instanceof ArrayAccess)) return;
+        ArrayAccess arrayAccess = (ArrayAccess) variable;
+        access(arrayAccess.array);
+        Interval index = evaluate(arrayAccess.index);
+        boolean safe = index.low >= 0 && index.high < ((ArrayType) arrayAccess.array.dataType).arraySize;
+        inBounds.merge(arrayAccess, safe, Boolean::logicalAnd);
+    }
+
+    /**
+     * @return The state after the condition turned out as given, or null if it cannot.
+     */
+    private Map<VariableEntry, Interval> assume(BinaryExpression condition, boolean outcome) {
+        Interval left = evaluate(condition.leftOperand);
+        Interval right = evaluate(condition.rightOperand);
+        BinaryExpression.Operator operator = outcome ? condition.operator : condition.operator.flipComparison();
+
+        Interval newLeft = restrict(left, operator, right);
+        Interval newRight = restrict(right, mirror(operator), left);
+        if (newLeft == null || newRight == null) return null;
+
+        // A variable compared with itself keeps its interval
+        Map<VariableEntry, Interval> result = new IdentityHashMap<>(state);
+        VariableEntry leftEntry = trackedOperand(condition.leftOperand);
+        VariableEntry rightEntry = trackedOperand(condition.rightOperand);
+        if (leftEntry != null && leftEntry != rightEntry) result.put(leftEntry, newLeft);
+        if (rightEntry != null && rightEntry != leftEntry) result.put(rightEntry, newRight);
+        return result;
+    }
+
+    private VariableEntry trackedOperand(Expression expression) {
+        return expression instanceof VariableExpression ? tracked(((VariableExpression) expression).variable) : null;
+    }
+
+    /**
+     * @return The values of x in the given interval, for which x op y holds for some y in the other interval, or null
+     * if there are none.
+     */
+    private static Interval restrict(Interval x, BinaryExpression.Operator operator, Interval y) {
+        switch (operator) {
+            case LST:
+                return Interval.of(x.low, Math.min(x.high, y.high - 1));
+            case LSE:
+                return Interval.of(x.low, Math.min(x.high, y.high));
+            case GRT:
+                return Interval.of(Math.max(x.low, y.low + 1), x.high);
+            case GRE:
+                return Interval.of(Math.max(x.low, y.low), x.high);
+            case EQU:
+                return Interval.of(Math.max(x.low, y.low), Math.min(x.high, y.high));
+            case NEQ:
+                if (y.low != y.high) return x;
+                if (x.low == y.low) return Interval.of(x.low + 1, x.high);
+                if (x.high == y.low) return Interval.of(x.low, x.high - 1);
+                return x;
+            default:
+                return x;
+        }
+    }
+
+    /**
+     * @return The operator comparing the operands the other way round.
+     */
+    private static BinaryExpression.Operator mirror(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case LST:
+                return BinaryExpression.Operator.GRT;
+            case LSE:
+                return BinaryExpression.Operator.GRE;
+            case GRT:
+                return BinaryExpression.Operator.LST;
+            case GRE:
+                return BinaryExpression.Operator.LSE;
+            default:
+                return operator;
+        }
+    }
+
+    /**
+     * @return The state reached on either of two paths.
+     */
+    private static Map<VariableEntry, Interval> join(Map<VariableEntry, Interval> a, Map<VariableEntry, Interval> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        Map<VariableEntry, Interval> result = new IdentityHashMap<>();
+        a.forEach((entry, interval) -> {
+            Interval other = b.get(entry);
+            if (other != null) result.put(entry, interval.union(other));
+        });
+        return result;
+    }
+
+    /**
+     * @return true if both states have the same intervals. The maps compare their values by identity.
+     */
+    private static boolean isSame(Map<VariableEntry, Interval> a, Map<VariableEntry, Interval> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<VariableEntry, Interval> entry : a.entrySet()) {
+            if (!entry.getValue().equals(b.get(entry.getKey()))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The state at a loop condition, with every bound that grew since the previous pass set to the extreme.
+     */
+    private static Map<VariableEntry, Interval> widen(Map<VariableEntry, Interval> previous, Map<VariableEntry, Interval> next) {
+        Map<VariableEntry, Interval> result = new IdentityHashMap<>();
+        next.forEach((entry, interval) -> {
+            Interval old = previous.get(entry);
+            if (old == null) return;
+            result.put(entry, Interval.of(interval.low < old.low ? Integer.MIN_VALUE : old.low,
+                    interval.high > old.high ? Integer.MAX_VALUE : old.high));
+        });
+        return result;
+    }
+
+    @Override
+    public void visit(AssignStatement assignStatement) {
+        if (state == null) return;
+        access(assignStatement.target);
+        Interval value = evaluate(assignStatement.value);
+        VariableEntry entry = tracked(assignStatement.target);
+        if (entry != null) {
+            state = new IdentityHashMap<>(state);
+            state.put(entry, value);
+        }
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        if (state == null) return;
+        for (Expression argument : callStatement.argumentList) evaluate(argument);
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        if (state == null) return;
+        BinaryExpression condition = (BinaryExpression) ifStatement.condition;
+        Map<VariableEntry, Interval> elseState = assume(condition, false);
+        state = assume(condition, true);
+        ifStatement.thenPart.accept(this);
+        Map<VariableEntry, Interval> thenState = state;
+        state = elseState;
+        ifStatement.elsePart.accept(this);
+        state = join(thenState, state);
+    }
+
+    @Override
+    public void visit(WhileStatement whileStatement) {
+        if (state == null) return;
+        BinaryExpression condition = (BinaryExpression) whileStatement.condition;
+        Map<VariableEntry, Interval> head = state;
+        for (int pass = 0; ; pass++) {
+            state = head;
+            state = assume(condition, true);
+            whileStatement.body.accept(this);
+            Map<VariableEntry, Interval> next = join(head, state);
+            if (isSame(next, head)) break;
+            head = pass == 0 ? next : widen(head, next);
+        }
+        state = head;
+        state = assume(condition, false);
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        for (Statement statement : compoundStatement.statements) statement.accept(this);
+    }
+}
@@ -1,10 +1,32 @@
 package de.thm.mni.compilerbau.phases._06_codegen;
 
 class Register {
+    /**
+     * The registers of the ECO32 system are shared, so moving on the register stack does not allocate.
+     */
+    private static final Register[] registers = new Register[32];
+
+    static {
+        for (int i = 0; i < registers.length; i++) registers[i] = new Register(i);
+    }
+
     final int number;
+    /**
+     * The name of the register in assembler code, built once.
+     */
+    final String name;
 
     Register(int number) {
         this.number = number;
+        this.name = "$" + number;
+    }
+
+    /**
+     * @param number The number of the register.
+     * @return The register with the given number.
+     */
+    static Register of(int number) {
+        return number >= 0 && number < registers.length ? registers[number] : new Register(number);
     }
 
     /**
@@ -26,10 +48,10 @@ class Register {
         return next(-offset);
     }
     Register next(int offset) {
-        return new Register(number + offset);
+        return of(number + offset);
     }
     @Override
     public String toString() {
-        return "$" + number;
+        return name;
     }
 }
@@ -0,0 +1,143 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.utils.Statistics;
+
+/**
+ * Replaces multiplications and divisions by constants with cheaper instructions in the code of a single procedure.
+ * <p>
+ * A multiplication by a power of two becomes a left shift. A multiplication by a constant of the form
+ * (2^m + 1) * 2^b or (2^m - 1) * 2^b becomes a shift, an addition or subtraction and possibly another shift. All of
+ * these compute the same 32 bit result as mul, including overflows.
+ * <p>
+ * A signed division by a power of two 2^n becomes an arithmetic right shift. The shift rounds towards negative
+ * infinity, while div truncates towards zero, so 2^n - 1 is added to negative dividends first:
+ * <pre>
+ *     sar $t,$s,31      ; -1 if $s is negative, 0 otherwise
+ *     slr $t,$t,32-n    ; 2^n-1 if $s is negative, 0 otherwise
+ *     add $t,$s,$t
+ *     sar $d,$t,n
+ * </pre>
+ * A division by a negative power of two additionally negates the quotient. The ECO32 has no instruction returning the
+ * high word of a product, so divisions by other constants are kept.
+ * <p>
+ * Sequences needing a register besides the destination use a register from $8 to $15, that is not live afterwards.
+ * Without such a register the instruction is kept.
+ */
+final class StrengthReducer {
+    private final InstructionList code;
+    private final InstructionList reduced;
+    private final Liveness liveness;
+
+    private StrengthReducer(InstructionList code) {
+        this.code = code;
+        this.reduced = code.replacement();
+        this.liveness = new Liveness(code);
+    }
+
+    /**
+     * @return The reduced code, which replaces the given list.
+     */
+    static InstructionList reduce(InstructionList code) {
+        StrengthReducer reducer = new StrengthReducer(code);
+        // Every instruction is either copied or replaced by its reduction, in a single pass
+        for (int i = 0; i < code.size(); i++) {
+            boolean isReduced = false;
+            if (code.kind(i) == InstructionList.IMMEDIATE) {
+                if (code.opcode(i) == Opcode.MUL) isReduced = reducer.multiplication(i);
+                else if (code.opcode(i) == Opcode.DIV) isReduced = reducer.division(i);
+            }
+            if (isReduced) Statistics.count(Statistics.Counter.STRENGTH_REDUCTIONS);
+            else reducer.reduced.add(code, i);
+        }
+        return reducer.reduced;
+    }
+
+    private boolean multiplication(int i) {
+        int d = code.first(i);
+        int s = code.second(i);
+        int k = code.third(i);
+
+        if (k == 0) {
+            reduced.add(Opcode.ADD, d, 0, 0, InstructionList.IMMEDIATE);
+            return true;
+        }
+        if (k == 1) {
+            reduced.add(Opcode.ADD, d, s, 0, InstructionList.REGISTER);
+            return true;
+        }
+        if (k == -1) {
+            reduced.add(Opcode.SUB, d, 0, s, InstructionList.REGISTER);
+            return true;
+        }
+        if (k == Integer.MIN_VALUE) return false;
+
+        int magnitude = Math.abs(k);
+        if (Integer.bitCount(magnitude) == 1) {
+            reduced.add(Opcode.SLL, d, s, log2(magnitude), InstructionList.IMMEDIATE);
+            if (k < 0) reduced.add(Opcode.SUB, d, 0, d, InstructionList.REGISTER);
+            return true;
+        }
+        if (k < 0) return false;
+
+        int b = Integer.numberOfTrailingZeros(k);
+        int odd = k >>> b;
+        Opcode combine;
+        int m;
+        if (Integer.bitCount(odd - 1) == 1) {
+            combine = Opcode.ADD;
+            m = log2(odd - 1);
+        } else if (Integer.bitCount(odd + 1) == 1) {
+            combine = Opcode.SUB;
+            m = log2(odd + 1);
+        } else {
+            return false;
+        }
+
+        int t = d != s ? d : temporary(i, s, d);
+        if (t < 0) return false;
+        reduced.add(Opcode.SLL, t, s, m, InstructionList.IMMEDIATE);
+        reduced.add(combine, d, t, s, InstructionList.REGISTER);
+        if (b > 0) reduced.add(Opcode.SLL, d, d, b, InstructionList.IMMEDIATE);
+        return true;
+    }
+
+    private boolean division(int i) {
+        int d = code.first(i);
+        int s = code.second(i);
+        int k = code.third(i);
+
+        if (k == 1) {
+            reduced.add(Opcode.ADD, d, s, 0, InstructionList.REGISTER);
+            return true;
+        }
+        if (k == Integer.MIN_VALUE || Integer.bitCount(Math.abs(k)) != 1 || Math.abs(k) == 1) return false;
+
+        int t = d != s ? d : temporary(i, s, d);
+        if (t < 0) return false;
+        int n = log2(Math.abs(k));
+        if (n == 1) {
+            reduced.add(Opcode.SLR, t, s, 31, InstructionList.IMMEDIATE);
+        } else {
+            reduced.add(Opcode.SAR, t, s, 31, InstructionList.IMMEDIATE);
+            reduced.add(Opcode.SLR, t, t, 32 - n, InstructionList.IMMEDIATE);
+        }
+        reduced.add(Opcode.ADD, t, s, t, InstructionList.REGISTER);
+        reduced.add(Opcode.SAR, d, t, n, InstructionList.IMMEDIATE);
+        if (k < 0) reduced.add(Opcode.SUB, d, 0, d, InstructionList.REGISTER);
+        return true;
+    }
+
+    /**
+     * @return A register from $8 to $15 neither used by the instruction nor live after it, or -1 if there is none.
+     */
+    private int temporary(int i, int s, int d) {
+        for (int register = 8; register <= 15; register++) {
+            if (register != s && register != d && !liveness.isLiveAfter(i, register)) return register;
+        }
+        return -1;
+    }
+
+    private static int log2(int powerOfTwo) {
+        return Integer.numberOfTrailingZeros(powerOfTwo);
+    }
+}
@@ -0,0 +1,108 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.phases._05_varalloc.RegisterNeed;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.VariableEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the calls of a procedure, that are the last action on their path through it, so the code generator can turn
+ * them into jumps. A call is in tail position if it is the last statement of the body, of a compound statement in tail
+ * position or a branch of an if-statement in tail position. A call within a loop never is.
+ * <p>
+ * A recursive call becomes a jump back to the start of the body, reusing the frame. A call to another procedure of the
+ * program becomes a jump to it after removing the frame, so the callee returns directly to the caller. Its arguments
+ * take the place of the arguments of the procedure, therefore the callee must not need a larger argument area. The
+ * code of the predefined procedures is not known to read its arguments from there, so they are always called.
+ * <p>
+ * The arguments are only stored after all of them have been computed, since they may read the parameters they
+ * replace. So all of them must fit onto the register stack at once, without spilling. A reference argument must be
+ * derived from a reference parameter: the address of a local variable or a value parameter would point into the
+ * frame, that is reused or removed.
+ */
+final class TailCalls extends DoNothingVisitor {
+    static final TailCalls NONE = new TailCalls(null, null);
+
+    final ProcedureEntry procedureEntry;
+    private final RegisterNeed registerNeed;
+    private final Set<CallStatement> calls = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * The entries of the parameters in order of declaration.
+     */
+    final List<VariableEntry> parameters = new ArrayList<>();
+    private boolean recursive = false;
+
+    private TailCalls(ProcedureEntry procedureEntry, RegisterNeed registerNeed) {
+        this.procedureEntry = procedureEntry;
+        this.registerNeed = registerNeed;
+    }
+
+    static TailCalls of(ProcedureDeclaration procedureDeclaration, ProcedureEntry procedureEntry,
+                        RegisterNeed registerNeed) {
+        TailCalls tailCalls = new TailCalls(procedureEntry, registerNeed);
+        for (ParameterDeclaration parameter : procedureDeclaration.parameters) {
+            tailCalls.parameters.add((VariableEntry) procedureEntry.localTable.lookup(parameter.name));
+        }
+        List<Statement> body = procedureDeclaration.body;
+        if (!body.isEmpty()) body.get(body.size() - 1).accept(tailCalls);
+        return tailCalls;
+    }
+
+    boolean contains(CallStatement callStatement) {
+        return calls.contains(callStatement);
+    }
+
+    /**
+     * @return true if a recursive call is turned into a jump, which needs a label at the start of the body.
+     */
+    boolean isRecursive() {
+        return recursive;
+    }
+
+    @Override
+    public void visit(CompoundStatement compoundStatement) {
+        List<Statement> statements = compoundStatement.statements;
+        if (!statements.isEmpty()) statements.get(statements.size() - 1).accept(this);
+    }
+
+    @Override
+    public void visit(IfStatement ifStatement) {
+        ifStatement.thenPart.accept(this);
+        ifStatement.elsePart.accept(this);
+    }
+
+    @Override
+    public void visit(CallStatement callStatement) {
+        ProcedureEntry callee = (ProcedureEntry) procedureEntry.localTable.lookup(callStatement.procedureName);
+        if (callee.localTable == null) return;
+        if (callee != procedureEntry && callee.argumentAreaSize > procedureEntry.argumentAreaSize) return;
+
+        for (int i = 0; i < callee.parameterTypes.size(); i++) {
+            Expression argument = callStatement.argumentList.get(i);
+            int need;
+            if (callee.parameterTypes.get(i).isReference) {
+                Variable variable = ((VariableExpression) argument).variable;
+                if (!isReferenceParameter(variable)) return;
+                need = registerNeed.of(variable);
+            } else {
+                // Even a variable kept in a register is copied, since the register may be overwritten before
+                need = Math.max(registerNeed.of(argument), 1);
+            }
+            if (i + need > registerNeed.registers()) return;
+        }
+        calls.add(callStatement);
+        if (callee == procedureEntry) recursive = true;
+    }
+
+    private boolean isReferenceParameter(Variable variable) {
+        while (variable instanceof ArrayAccess) variable = ((ArrayAccess) variable).array;
+        return ((VariableEntry) procedureEntry.localTable.lookup(((NamedVariable) variable).name)).isReference;
+    }
+}
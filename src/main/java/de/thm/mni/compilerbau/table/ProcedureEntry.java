@@ -11,6 +11,16 @@ public class ProcedureEntry extends Entry {
     public final SymbolTable localTable;
     public final List<ParameterType> parameterTypes;
     public int argumentAreaSize, outgoingAreaSize, localVarAreaSize; // This values have to be set in phase 5
+    /**
+     * The size of the frame area below the local variables, in which registers are spilled while evaluating
+     * expressions. Set in phase 5 as well.
+     */
+    public int spillAreaSize;
+    /**
+     * The number of local variables and parameters kept in registers, see {@link VariableEntry#register}. These
+     * registers are not available for evaluating expressions. Set in phase 5 as well.
+     */
+    public int registerVariables;
 
     /**
      * Creates a new {@link Entry} representing a declared SPL procedure.
@@ -1,9 +1,11 @@
 package de.thm.mni.compilerbau.table;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import de.thm.mni.compilerbau.utils.SplError;
+import de.thm.mni.compilerbau.utils.Statistics;
 
 /**
  * Represents a symbol table for a definition scope in SPL.
@@ -53,14 +55,12 @@ public class SymbolTable {
      * Throws an exception if a symbol with this name already exists in this scope.
      *
      * @param entry The entry for the new symbol.
-     * @param error The exception to throw if a symbol with this name is already defined.
+     * @param error Builds the exception to throw if a symbol with this name is already defined.
      * @throws SplError If a symbol with this name is already defined.
      */
-    public void enter(Entry entry, SplError error) {
-        if (this.entries.containsKey(entry.name))
-            throw error;
-
-        this.enter(entry);
+    public void enter(Entry entry, Supplier<SplError> error) {
+        if (this.entries.putIfAbsent(entry.name, entry) != null)
+            throw error.get();
     }
 
     /**
@@ -71,10 +71,16 @@ public class SymbolTable {
      * @return null if no symbol was found, the found symbol otherwise.
      */
     public Entry lookup(Identifier name) {
-        Entry entry = this.entries.get(name);
-
-        if (entry != null) return entry;
-        if (upperLevel != null) return upperLevel.lookup(name);
+        int depth = 0;
+        for (SymbolTable table = this; table != null; table = table.upperLevel, depth++) {
+            Entry entry = table.entries.get(name);
+            if (entry != null) {
+                Statistics.countLookup(depth);
+                return entry;
+            }
+        }
+
+        Statistics.countLookup(-1);
         return null;
     }
 
@@ -82,13 +88,16 @@ public class SymbolTable {
      * Looks for the symbol defined with the given name.
      * Recursively looks in outer scopes if the name is not defined in this scope.
      *
-     * @param name The name of the symbol.
+     * @param name  The name of the symbol.
+     * @param error Builds the exception to throw if there is no symbol with this name.
      * @return The symbol belonging to this name.
      * @throws SplError If there is no symbol with this name.
      * @see SymbolTable#find(Identifier)
      */
-    public Entry lookup(Identifier name, SplError error) {
-        return find(name).orElseThrow(() -> error);
+    public Entry lookup(Identifier name, Supplier<SplError> error) {
+        Entry entry = lookup(name);
+        if (entry == null) throw error.get();
+        return entry;
     }
 
     /**
@@ -97,7 +106,7 @@ public class SymbolTable {
      *
      * @param name The name of the symbol.
      * @return The symbol belonging to this name or empty.
-     * @see SymbolTable#lookup(Identifier, SplError)
+     * @see SymbolTable#lookup(Identifier, Supplier)
      */
     public Optional<Entry> find(Identifier name) {
         return Optional.ofNullable(lookup(name));
@@ -10,6 +10,11 @@ public class VariableEntry extends Entry {
     public final Type type;
     public final boolean isReference;
     public int offset; // This value has to be set in phase 5
+    /**
+     * The number of the callee-saved register holding the variable for the whole procedure, or 0 if the variable is
+     * only kept in the frame at its offset. Set in phase 5 as well.
+     */
+    public int register;
 
     /**
      * Creates a new {@link Entry} representing a declared SPL variable. This variable can be a local variable or the
@@ -1,19 +1,53 @@
 package de.thm.mni.compilerbau.utils;
 
 import java.util.AbstractList;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
 
 /**
- * A linked list.
+ * An immutable list, that is built by prepending elements.
  * Simplifies construction of lists when following a linked-list like structure.
  * Useful to construct lists in semantic actions when parsing right-recursive list structures.
+ * <p>
+ * The elements are stored at the end of an array, which is shared with the longer lists created by prepending to this
+ * list. Prepending to the longest list sharing an array fills the free slot in front of it, so building a list element
+ * by element takes amortized constant time per element. Prepending to any other list copies it into a new array.
  *
  * @param <E> Type parameter of the list
  */
-public class List<E> extends AbstractList<E> {
-    private static final List<?> Nil = new List<>();
+public class List<E> extends AbstractList<E> implements RandomAccess {
+    private static final int MIN_CAPACITY = 4;
+
+    private static final List<?> Nil = new List<>(new Elements(0), 0);
+
+    /**
+     * An array shared by several lists, filled from its end.
+     */
+    private static final class Elements {
+        final Object[] array;
+        private static final AtomicIntegerFieldUpdater<Elements> FIRST =
+                AtomicIntegerFieldUpdater.newUpdater(Elements.class, "first");
+
+        /**
+         * The index of the first used slot. All slots in front of it are free.
+         */
+        volatile int first;
+
+        Elements(int capacity) {
+            this.array = new Object[capacity];
+            this.first = capacity;
+        }
+    }
+
+    private final Elements elements;
+    private final int start;
+
+    private List(Elements elements, int start) {
+        this.elements = elements;
+        this.start = start;
+    }
 
     /**
      * Equivalent to new List<E>()
@@ -34,12 +68,11 @@ public class List<E> extends AbstractList<E> {
      * @return A list containing the element.
      */
     public static <E> List<E> of(E element) {
-        return new List<>(element, nil());
+        return cons(element, nil());
     }
 
     /**
      * Constructs a list from a head and a tail.
-     * Equivalent to new List<E>(head, tail)
      *
      * @param head The head of the list
      * @param tail The tail of the list
@@ -47,79 +80,41 @@ public class List<E> extends AbstractList<E> {
      * @return A list containing the head element and all elements of tail
      */
     public static <E> List<E> cons(E head, List<E> tail) {
-        return new List<>(head, tail);
-    }
-
-
-    private final List<E> tail;
-    private final E head;
-
-    private final boolean isEmpty;
+        Elements shared = tail.elements;
+        // The free slot is claimed without locking, so lists are built concurrently. nil has no free slot.
+        int start = tail.start;
+        if (start > 0 && start == shared.first && Elements.FIRST.compareAndSet(shared, start, start - 1)) {
+            shared.array[start - 1] = head;
+            return new List<>(shared, start - 1);
+        }
 
-    /**
-     * Constructs an empty list
-     */
-    private List() {
-        this.isEmpty = true;
-        this.head = null;
-        this.tail = null;
-    }
-
-    /**
-     * Constructs a list from a head and a tail.
-     *
-     * @param head The head of the list
-     * @param tail The tail of the list
-     */
-    public List(E head, List<E> tail) {
-        this.isEmpty = false;
-        this.head = head;
-        this.tail = Objects.requireNonNull(tail);
+        int size = tail.size();
+        Elements copy = new Elements(Math.max(MIN_CAPACITY, 2 * (size + 1)));
+        int first = copy.array.length - size - 1;
+        copy.first = first;
+        copy.array[first] = head;
+        System.arraycopy(shared.array, start, copy.array, first + 1, size);
+        return new List<>(copy, first);
     }
 
     @Override
     public int size() {
-        return (isEmpty) ? 0 : 1 + tail.size();
-    }
-
-    @Override
-    public boolean isEmpty() {
-        return isEmpty;
+        return elements.array.length - start;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public E get(int i) {
-        if (isEmpty) {
-            throw new IndexOutOfBoundsException();
-        }
-
-        return (i == 0) ? head : tail.get(i - 1);
+        Objects.checkIndex(i, size());
+        return (E) elements.array[start + i];
     }
 
     @Override
-    public Iterator<E> iterator() {
-        return new ImmutableListIterator<>(this);
-    }
-
-    private static class ImmutableListIterator<E> implements Iterator<E> {
-        private List<E> current;
-
-        ImmutableListIterator(List<E> current) {
-            this.current = current;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return !current.isEmpty;
-        }
-
-        @Override
-        public E next() {
-            if (!hasNext()) throw new NoSuchElementException();
-
-            E result = current.head;
-            current = current.tail;
-            return result;
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Object[] array = elements.array;
+        for (int i = start; i < array.length; i++) {
+            action.accept((E) array[i]);
         }
     }
 }
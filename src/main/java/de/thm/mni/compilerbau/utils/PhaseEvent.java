@@ -0,0 +1,23 @@
+package de.thm.mni.compilerbau.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning one phase of a compilation.
+ */
+@Name("de.thm.mni.compilerbau.Phase")
+@Label("Compiler Phase")
+@Category("SPL Compiler")
+@Description("A phase of the SPL compiler run on a whole program")
+public class PhaseEvent extends Event {
+    @Label("Phase")
+    public String phase;
+
+    public PhaseEvent(String phase) {
+        this.phase = phase;
+    }
+}
@@ -0,0 +1,67 @@
+package de.thm.mni.compilerbau.utils;
+
+import de.thm.mni.compilerbau.absyn.ProcedureDeclaration;
+import de.thm.mni.compilerbau.absyn.visitor.NodeCounter;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning the processing of a single procedure within a phase.
+ * <p>
+ * The name and the size of the procedure are only computed if the event is actually recorded.
+ */
+@Name("de.thm.mni.compilerbau.Procedure")
+@Label("Compiler Procedure")
+@Category("SPL Compiler")
+@Description("The processing of a single procedure in a phase of the SPL compiler")
+public class ProcedureEvent extends Event {
+    @Label("Phase")
+    public String phase;
+
+    @Label("Procedure")
+    public String procedure;
+
+    @Label("AST Nodes")
+    public int astNodes;
+
+    @Label("Instructions")
+    public int instructions;
+
+    /**
+     * Whether the event was begun. A recording started in the meantime must not commit an event never begun.
+     */
+    private transient boolean begun;
+
+    /**
+     * Creates the event and begins it, if it is recorded.
+     *
+     * @param phase The name of the phase processing the procedure.
+     */
+    public ProcedureEvent(String phase) {
+        this.phase = phase;
+        if (isEnabled()) {
+            begin();
+            begun = true;
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if it is recorded.
+     *
+     * @param declaration  The processed procedure.
+     * @param instructions The number of instructions generated for the procedure.
+     */
+    public void finish(ProcedureDeclaration declaration, int instructions) {
+        if (!begun) return;
+        end();
+        if (shouldCommit()) {
+            this.procedure = declaration.name.toString();
+            this.astNodes = NodeCounter.count(declaration);
+            this.instructions = instructions;
+            commit();
+        }
+    }
+}
@@ -12,13 +12,14 @@ public class SplError extends RuntimeException {
     public final int errorCode;
 
     private SplError(Position position, String message, Object... formatArgs) {
-        super(String.format(message, formatArgs));
-        this.errorCode = 1;
-        this.position = position;
+        this(1, position, message, formatArgs);
     }
 
+    /**
+     * SPL errors are reported by their position in the SPL program, so no stack trace is captured.
+     */
     private SplError(int errorCode, Position position, String message, Object... formatArgs) {
-        super(String.format(message, formatArgs));
+        super(String.format(message, formatArgs), null, false, false);
         this.errorCode = errorCode;
         this.position = position;
     }
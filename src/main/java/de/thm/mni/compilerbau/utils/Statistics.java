@@ -0,0 +1,296 @@
+package de.thm.mni.compilerbau.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the time and memory spent in every compiler phase together with some counters describing the compiled
+ * program, as requested by the '--stats' option.
+ * <p>
+ * Collection is disabled unless {@link #enable()} was called. The counting methods are called from within the phases
+ * and do nothing while collection is disabled. Because the collected statistics are shared by the whole process,
+ * they only make sense while a single program is compiled.
+ * <p>
+ * CPU time and allocations are summed over all live threads, since the phases also run on the threads of the fork-join
+ * pool. The work of a thread ending within a phase is lost, as is the work of another compilation running at the same
+ * time.
+ */
+public class Statistics {
+    public enum Counter {
+        TOKENS("tokens scanned"),
+        AST_NODES("AST nodes built"),
+        INSTRUCTIONS("instructions emitted"),
+        FOLDED_CONSTANTS("constants folded"),
+        FOLDED_BRANCHES("branches folded"),
+        INLINED_CALLS("calls inlined"),
+        PEEPHOLE_CONSTANTS("peephole constants"),
+        PEEPHOLE_ADDRESSES("peephole addresses"),
+        PEEPHOLE_JUMPS("peephole jumps"),
+        PEEPHOLE_COPIES("peephole copies"),
+        STRENGTH_REDUCTIONS("strength reductions"),
+        SPILLS("registers spilled"),
+        REGISTER_VARIABLES("variables in registers"),
+        BOUNDS_CHECKS_REMOVED("bounds checks removed"),
+        INVARIANTS_HOISTED("loop invariants hoisted"),
+        TAIL_CALLS("tail calls eliminated");
+
+        private final String description;
+
+        Counter(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * An action of a phase, that does not produce a result.
+     */
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * The costs of a part of a phase, accumulated over the sections run between {@link #begin()} and {@link #end()}.
+     * The part is reported as a phase of its own, listed before the phase containing it, whose costs are reduced by
+     * those of the part.
+     * <p>
+     * Only the thread running the sections is measured, so the phase containing the part must not run it on other
+     * threads.
+     */
+    public static final class Part {
+        private final String name;
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long wallNanos, cpuNanos, allocatedBytes;
+        private long wallStart, cpuStart, allocatedStart;
+
+        public Part(String name) {
+            this.name = name;
+        }
+
+        public void begin() {
+            cpuStart = threadCpuTime();
+            allocatedStart = threadAllocatedBytes();
+            wallStart = System.nanoTime();
+        }
+
+        public void end() {
+            wallNanos += System.nanoTime() - wallStart;
+            cpuNanos += threadCpuTime() - cpuStart;
+            allocatedBytes += threadAllocatedBytes() - allocatedStart;
+        }
+
+        private long threadCpuTime() {
+            return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+        }
+
+        private long threadAllocatedBytes() {
+            return threads instanceof com.sun.management.ThreadMXBean
+                    ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+                    : 0;
+        }
+    }
+
+    private static class PhaseRecord {
+        final String name;
+        final long wallNanos, cpuNanos, allocatedBytes;
+
+        PhaseRecord(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.name = name;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * Lookups are counted by the number of scopes that had to be searched. The last slot counts unresolved names.
+     */
+    private static final int MAX_LOOKUP_DEPTH = 8;
+
+    private static volatile Statistics active = null;
+
+    private final List<PhaseRecord> phases = new ArrayList<>();
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final AtomicLongArray lookups = new AtomicLongArray(MAX_LOOKUP_DEPTH + 1);
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private Statistics() {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+    }
+
+    /**
+     * Enables the collection of statistics.
+     *
+     * @return The object collecting the statistics from now on.
+     */
+    public static Statistics enable() {
+        Statistics statistics = new Statistics();
+        active = statistics;
+        return statistics;
+    }
+
+    /**
+     * @return true if statistics are collected.
+     */
+    public static boolean isEnabled() {
+        return active != null;
+    }
+
+    public static void count(Counter counter) {
+        Statistics statistics = active;
+        if (statistics != null) statistics.counters[counter.ordinal()].increment();
+    }
+
+    public static void count(Counter counter, long amount) {
+        Statistics statistics = active;
+        if (statistics != null) statistics.counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Counts a lookup in a symbol table.
+     *
+     * @param depth The number of scopes left before the name was found, 0 for the innermost scope.
+     *              -1 if the name was not found at all.
+     */
+    public static void countLookup(int depth) {
+        Statistics statistics = active;
+        if (statistics != null) {
+            statistics.lookups.incrementAndGet(depth < 0 ? MAX_LOOKUP_DEPTH : Math.min(depth, MAX_LOOKUP_DEPTH - 1));
+        }
+    }
+
+    /**
+     * Runs a phase and records its costs if statistics are enabled.
+     * The phase is also reported as a {@link PhaseEvent} to the JDK Flight Recorder.
+     *
+     * @param phase The name of the phase.
+     * @param body  The code of the phase.
+     * @return The result of the phase.
+     */
+    public static <T> T measure(String phase, Callable<T> body) throws Exception {
+        return measure(phase, null, body);
+    }
+
+    /**
+     * Runs a phase containing a part, that is reported separately. See {@link Part}.
+     *
+     * @param phase The name of the phase.
+     * @param part  The part measured while the phase runs, null if there is none.
+     * @param body  The code of the phase.
+     * @return The result of the phase.
+     */
+    public static <T> T measure(String phase, Part part, Callable<T> body) throws Exception {
+        PhaseEvent event = new PhaseEvent(phase);
+        event.begin();
+        try {
+            Statistics statistics = active;
+            return statistics == null ? body.call() : statistics.record(phase, part, body);
+        } finally {
+            event.commit();
+        }
+    }
+
+    public static void measure(String phase, Action body) throws Exception {
+        measure(phase, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    private <T> T record(String phase, Part part, Callable<T> body) throws Exception {
+        long wall = System.nanoTime();
+        Map<Long, long[]> before = threadCosts();
+        try {
+            return body.call();
+        } finally {
+            long wallNanos = System.nanoTime() - wall;
+            long cpuNanos = 0, allocatedBytes = 0;
+            for (Map.Entry<Long, long[]> thread : threadCosts().entrySet()) {
+                long[] start = before.getOrDefault(thread.getKey(), new long[2]);
+                cpuNanos += thread.getValue()[0] - start[0];
+                allocatedBytes += thread.getValue()[1] - start[1];
+            }
+            if (part != null) {
+                phases.add(new PhaseRecord(part.name, part.wallNanos, part.cpuNanos, part.allocatedBytes));
+                wallNanos -= part.wallNanos;
+                cpuNanos -= part.cpuNanos;
+                allocatedBytes -= part.allocatedBytes;
+            }
+            phases.add(new PhaseRecord(phase, wallNanos, cpuNanos, allocatedBytes));
+        }
+    }
+
+    /**
+     * @return The CPU time and the allocated bytes of every live thread by its id. Costs not measured by the JVM are 0.
+     */
+    private Map<Long, long[]> threadCosts() {
+        long[] ids = threads.getAllThreadIds();
+        long[] cpu = new long[ids.length];
+        long[] allocated = new long[ids.length];
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadCpuTimeSupported()) cpu = sunThreads.getThreadCpuTime(ids);
+            allocated = sunThreads.getThreadAllocatedBytes(ids);
+        }
+        Map<Long, long[]> costs = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            // A thread ended since its id was taken reports -1 and is left out
+            if (cpu[i] >= 0 && allocated[i] >= 0) costs.put(ids[i], new long[]{cpu[i], allocated[i]});
+        }
+        return costs;
+    }
+
+    private static String lookupLabel(int slot) {
+        if (slot == MAX_LOOKUP_DEPTH) return "unresolved";
+        return slot == MAX_LOOKUP_DEPTH - 1 ? "depth>=" + slot : "depth " + slot;
+    }
+
+    /**
+     * @return A human readable table of the collected statistics.
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-12s %12s %12s %14s\n", "phase", "wall ms", "cpu ms", "allocated KiB"));
+        for (PhaseRecord phase : phases) {
+            report.append(String.format("%-12s %12.3f %12.3f %14.1f\n",
+                    phase.name, phase.wallNanos / 1e6, phase.cpuNanos / 1e6, phase.allocatedBytes / 1024.0));
+        }
+        report.append('\n');
+        for (Counter counter : Counter.values()) {
+            report.append(String.format("%-24s %d\n", counter.description, counters[counter.ordinal()].sum()));
+        }
+        for (int slot = 0; slot <= MAX_LOOKUP_DEPTH; slot++) {
+            if (lookups.get(slot) > 0) {
+                report.append(String.format("%-24s %d\n", "lookups " + lookupLabel(slot), lookups.get(slot)));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return The collected statistics as a JSON object.
+     */
+    public String toJson() {
+        String phaseList = phases.stream()
+                .map(phase -> String.format("{\"name\":\"%s\",\"wallNanos\":%d,\"cpuNanos\":%d,\"allocatedBytes\":%d}",
+                        phase.name, phase.wallNanos, phase.cpuNanos, phase.allocatedBytes))
+                .collect(Collectors.joining(","));
+        List<String> counterList = new ArrayList<>();
+        for (Counter counter : Counter.values()) {
+            counterList.add(String.format("\"%s\":%d", counter.name().toLowerCase(), counters[counter.ordinal()].sum()));
+        }
+        List<String> lookupList = new ArrayList<>();
+        for (int slot = 0; slot <= MAX_LOOKUP_DEPTH; slot++) {
+            if (lookups.get(slot) > 0) lookupList.add(String.format("\"%s\":%d", lookupLabel(slot), lookups.get(slot)));
+        }
+        return String.format("{\"phases\":[%s],\"counters\":{%s},\"lookups\":{%s}}",
+                phaseList, String.join(",", counterList), String.join(",", lookupList));
+    }
+}